@@ -0,0 +1,60 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import io.hsiao.devops.svnhooks.ChangeListSource;
+import io.hsiao.devops.svnhooks.ChangeRecord;
+import io.hsiao.devops.svnhooks.RulePlan;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * All rules of the default plan over an in-memory change listing, i.e. the
+ * former checkChanged without any svnlook or database cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class CheckChangedBenchmark {
+  @Param({"10", "1000", "100000", "1000000"})
+  public int entries;
+
+  @Param({"few", "many"})
+  public String description;
+
+  private Properties props;
+  private List<ChangeRecord> records;
+  private RulePlan plan;
+
+  @Setup
+  public void setup() {
+    props = Fixtures.properties();
+    records = Fixtures.changes(entries);
+    plan = RulePlan.getDefault();
+  }
+
+  @Benchmark
+  public void checkChanged() throws Exception {
+    plan.execute(Fixtures.cachedContext(props, Fixtures.packageDescription(description)), new ChangeListSource(records));
+  }
+
+  @Benchmark
+  public List<ChangeRecord> parseChanged() {
+    return Fixtures.changes(entries);
+  }
+}
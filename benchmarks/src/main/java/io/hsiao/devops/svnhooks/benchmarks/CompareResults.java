@@ -0,0 +1,99 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH CSV reports (-rf csv), e.g. of the previous and the
+ * upcoming release, and prints the relative change of every score.
+ *
+ * <pre>
+ * java -cp benchmarks.jar io.hsiao.devops.svnhooks.benchmarks.CompareResults baseline.csv candidate.csv
+ * </pre>
+ */
+public class CompareResults {
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("usage: CompareResults <baseline.csv> <candidate.csv>");
+      System.exit(1);
+    }
+
+    Map<String, String[]> baseline = read(args[0]);
+    Map<String, String[]> candidate = read(args[1]);
+
+    System.out.println(String.format("%-90s %14s %14s %9s", "benchmark", "baseline", "candidate", "change"));
+    for (Map.Entry<String, String[]> entry: candidate.entrySet()) {
+      String[] before = baseline.get(entry.getKey());
+      String[] after = entry.getValue();
+
+      double score = Double.parseDouble(after[0]);
+      if (before == null) {
+        System.out.println(String.format("%-90s %14s %14.3f %9s %s", entry.getKey(), "-", score, "new", after[1]));
+        continue;
+      }
+
+      double previous = Double.parseDouble(before[0]);
+      double change = (previous == 0) ? 0 : (score - previous) / previous * 100;
+      System.out.println(String.format("%-90s %14.3f %14.3f %+8.1f%% %s", entry.getKey(), previous, score, change, after[1]));
+    }
+  }
+
+  /**
+   * @return "benchmark mode params" mapped to {score, unit}
+   */
+  private static Map<String, String[]> read(String file) throws Exception {
+    List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+    List<String> header = split(lines.get(0));
+
+    int benchmark = header.indexOf("Benchmark");
+    int mode = header.indexOf("Mode");
+    int score = header.indexOf("Score");
+    int unit = header.indexOf("Unit");
+
+    Map<String, String[]> results = new LinkedHashMap<>();
+    for (String line: lines.subList(1, lines.size())) {
+      List<String> fields = split(line);
+      if (fields.size() < header.size()) {
+        continue;
+      }
+
+      StringBuilder key = new StringBuilder(fields.get(benchmark)).append(" ").append(fields.get(mode));
+      for (int idx = 0; idx < header.size(); ++idx) {
+        if (header.get(idx).startsWith("Param: ") && !fields.get(idx).isEmpty()) {
+          key.append(" ").append(header.get(idx).substring(7)).append("=").append(fields.get(idx));
+        }
+      }
+
+      results.put(key.toString(), new String[] {fields.get(score), fields.get(unit)});
+    }
+
+    return results;
+  }
+
+  private static List<String> split(String line) {
+    List<String> fields = new ArrayList<>();
+
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (char ch: line.toCharArray()) {
+      if (ch == '"') {
+        quoted = !quoted;
+      }
+      else if (ch == ',' && !quoted) {
+        fields.add(field.toString());
+        field.setLength(0);
+      }
+      else {
+        field.append(ch);
+      }
+    }
+    fields.add(field.toString());
+
+    return fields;
+  }
+}
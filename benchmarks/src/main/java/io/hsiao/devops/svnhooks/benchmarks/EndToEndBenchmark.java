@@ -0,0 +1,99 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import io.hsiao.devops.svnhooks.ArtifactCache;
+import io.hsiao.devops.svnhooks.PreCommitHook;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole hook run in a warm JVM: a shell stand-in for svnlook serves a
+ * synthetic transaction and an in-memory H2 database stands in for
+ * TeamForge. "cold" clears the artifact cache before every run, so each
+ * one pays for the database round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+  @Param({"10", "1000", "100000"})
+  public int entries;
+
+  @Param({"warm", "cold"})
+  public String cache;
+
+  private Path dataDir;
+  private Properties props;
+  private String[] args;
+  private PrintStream sink;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    dataDir = Files.createTempDirectory("svnhook-bench");
+
+    Files.write(dataDir.resolve("author"), Fixtures.AUTHOR.getBytes(StandardCharsets.UTF_8));
+    Files.write(dataDir.resolve("log"), Fixtures.message().getBytes(StandardCharsets.UTF_8));
+    Files.write(dataDir.resolve("changed"), Fixtures.changedLines(entries), StandardCharsets.UTF_8);
+
+    Path svnlook = dataDir.resolve("svnlook");
+    Files.write(svnlook, Fixtures.resource("fake-svnlook.sh").replace("@DATA_DIR@", dataDir.toString()).getBytes(StandardCharsets.UTF_8));
+    Files.setPosixFilePermissions(svnlook, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+    props = Fixtures.properties();
+    props.setProperty("svnlook.path", svnlook.toString());
+    Fixtures.loadTeamForge(props, Fixtures.packageDescription("few"));
+
+    List<String> arguments = new ArrayList<>(Arrays.asList("/var/svn/" + Fixtures.REPOSITORY, "1-1"));
+    arguments.addAll(Arrays.asList(Fixtures.arguments()));
+    args = arguments.toArray(new String[arguments.size()]);
+
+    sink = Fixtures.nullPrintStream();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    for (String name: new String[] {"author", "log", "changed", "svnlook"}) {
+      Files.deleteIfExists(dataDir.resolve(name));
+    }
+    Files.deleteIfExists(dataDir);
+  }
+
+  @Benchmark
+  public int hook() throws Exception {
+    if (cache.equals("cold")) {
+      ArtifactCache.getInstance(props).clear();
+    }
+
+    int exitValue = new PreCommitHook(args, props, sink).execute();
+    if (exitValue != 0) {
+      throw new IllegalStateException("synthetic commit was rejected");
+    }
+
+    return exitValue;
+  }
+}
@@ -0,0 +1,181 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import io.hsiao.devops.svnhooks.Artifact;
+import io.hsiao.devops.svnhooks.ArtifactCache;
+import io.hsiao.devops.svnhooks.ChangeRecord;
+import io.hsiao.devops.svnhooks.HookContext;
+import io.hsiao.devops.svnhooks.HookOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Synthetic commits, package descriptions and TeamForge data shared by the
+ * benchmarks. Everything is deterministic, so runs of different releases
+ * measure the same work.
+ */
+public class Fixtures {
+  public static final String AUTHOR = "bench";
+  public static final String ARTIFACT_ID = "artf1000";
+  public static final String RELEASE = "1.0";
+  public static final String REPOSITORY = "repo";
+
+  private static final String[] FOLDERS = {"src/main/java/io/hsiao/app/", "src/main/resources/", "src/test/java/io/hsiao/app/", "db/src/main/dbscript/" + RELEASE + "/", "docs/"};
+  private static final String[] EXTENSIONS = {".java", ".xml", ".properties", ".sql", ".md"};
+
+  /**
+   * @param kind "few": 2 branches/users, "many": 200 branches/users, "long": many
+   * branches plus a long free-text description around the tags
+   */
+  public static String packageDescription(String kind) {
+    int count = kind.equals("few") ? 2 : 200;
+
+    StringBuilder branches = new StringBuilder("trunk/");
+    StringBuilder users = new StringBuilder(AUTHOR);
+    for (int idx = 1; idx < count; ++idx) {
+      branches.append(",branches/release-").append(idx).append("/");
+      users.append(",user").append(idx);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    if (kind.equals("long")) {
+      for (int idx = 0; idx < 50; ++idx) {
+        sb.append("This package ships component ").append(idx).append(" of the product line. ");
+      }
+    }
+    sb.append("[branch:").append(branches).append("]");
+    sb.append("[version:0.9,").append(RELEASE).append(",1.1]");
+    sb.append("[access:").append(users).append("]");
+    sb.append("[repository:").append(REPOSITORY).append("]");
+
+    return sb.toString();
+  }
+
+  public static Artifact artifact(String description) {
+    return new Artifact(ARTIFACT_ID, "Opened", RELEASE, "active", description);
+  }
+
+  /**
+   * @return a clean change listing (no rule fires) of the given size
+   */
+  public static List<String> changedLines(int entries) {
+    List<String> lines = new ArrayList<>(entries);
+
+    for (int idx = 0; idx < entries; ++idx) {
+      String type = (idx % 3 == 0) ? "A" : "U";
+      String folder = FOLDERS[idx % FOLDERS.length];
+      String extension = EXTENSIONS[idx % EXTENSIONS.length];
+      lines.add(type + "   trunk/module" + (idx % 97) + "/" + folder + "File" + idx + extension);
+    }
+
+    return lines;
+  }
+
+  public static List<ChangeRecord> changes(int entries) {
+    List<ChangeRecord> records = new ArrayList<>(entries);
+    for (String line: changedLines(entries)) {
+      records.add(ChangeRecord.parse(line));
+    }
+    return records;
+  }
+
+  public static String message() {
+    return "[" + ARTIFACT_ID + "] synthetic benchmark commit\n\nWhat: benchmark\nReviewed By: nobody";
+  }
+
+  public static String[] arguments() {
+    return new String[] {"--forbidden-suffixes=jar,zip,tar.gz,exe,dll", "--check-log-message"};
+  }
+
+  public static HookOptions options() {
+    return new HookOptions(Arrays.asList(arguments()));
+  }
+
+  public static Properties properties() {
+    Properties props = new Properties();
+
+    props.setProperty("jdbc.url", "jdbc:h2:mem:teamforge;DB_CLOSE_DELAY=-1");
+    props.setProperty("jdbc.username", "sa");
+    props.setProperty("jdbc.password", "sa");
+
+    return props;
+  }
+
+  /**
+   * Creates a context whose artifact is served from the in-process cache, so
+   * that no database is involved.
+   */
+  public static HookContext cachedContext(Properties props, String description) {
+    ArtifactCache.getInstance(props).put(artifact(description));
+    return new HookContext(props, "svnlook", "/var/svn/" + REPOSITORY, "1-1", AUTHOR, message(), options());
+  }
+
+  /**
+   * Loads the TeamForge stand-in schema and one artifact resolved against an
+   * active release of a package with the given description.
+   */
+  public static void loadTeamForge(Properties props, String description) throws Exception {
+    try (Connection conn = DriverManager.getConnection(props.getProperty("jdbc.url"), props.getProperty("jdbc.username"), props.getProperty("jdbc.password"))) {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("DROP ALL OBJECTS");
+        for (String sql: resource("teamforge-schema.sql").split(";")) {
+          if (!sql.replaceAll("(?m)^--.*$", "").trim().isEmpty()) {
+            stmt.execute(sql);
+          }
+        }
+      }
+
+      execute(conn, "INSERT INTO field_value VALUES (?, ?, ?)", "fv1", "Opened", "0");
+      execute(conn, "INSERT INTO artifact VALUES (?, ?)", ARTIFACT_ID, "fv1");
+      execute(conn, "INSERT INTO folder VALUES (?, ?, ?, ?, ?)", "pkg1", null, "package", description, "0");
+      execute(conn, "INSERT INTO folder VALUES (?, ?, ?, ?, ?)", "rel1", "pkg1", RELEASE, "", "0");
+      execute(conn, "INSERT INTO frs_release VALUES (?, ?)", "rel1", "active");
+      execute(conn, "INSERT INTO relationship VALUES (?, ?, ?, ?, ?)", "rel_1", "rel1", ARTIFACT_ID, "ArtifactResolvedRelease", "0");
+    }
+  }
+
+  private static void execute(Connection conn, String sql, String... values) throws Exception {
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      for (int idx = 0; idx < values.length; ++idx) {
+        pstmt.setString(idx + 1, values[idx]);
+      }
+      pstmt.executeUpdate();
+    }
+  }
+
+  public static String resource(String name) throws Exception {
+    try (InputStream ins = Fixtures.class.getResourceAsStream(name)) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = ins.read(buffer)) != -1) {
+        bos.write(buffer, 0, count);
+      }
+
+      return bos.toString("UTF-8");
+    }
+  }
+
+  public static PrintStream nullPrintStream() {
+    return new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    });
+  }
+}
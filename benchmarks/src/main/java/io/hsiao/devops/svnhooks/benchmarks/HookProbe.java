@@ -0,0 +1,88 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import io.hsiao.devops.svnhooks.HookMetrics;
+import io.hsiao.devops.svnhooks.PreCommitHook;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Runs the pre-commit hook like its Main does and, as the process exits,
+ * appends one line to the file named by the 'loadtest.results' system
+ * property:
+ *
+ * <pre>
+ * &lt;milliseconds since the JVM started&gt; &lt;peak RSS in kB, -1 if unknown&gt; &lt;outcome&gt;
+ * </pre>
+ *
+ * The outcome is that of {@link HookMetrics#getOutcome()}, or "error" if the
+ * hook failed before checking anything.
+ *
+ * Each line is a single append, so concurrent hook processes may share the
+ * file. Used by {@link LoadTest} in place of Main.
+ */
+public class HookProbe {
+  public static final String RESULTS_PROPERTY = "loadtest.results";
+
+  private static volatile PreCommitHook hook;
+
+  public static void main(String[] args) {
+    final String results = System.getProperty(RESULTS_PROPERTY);
+
+    if (results != null) {
+      // the hook ends with System.exit
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+          String line = elapsed + " " + getPeakRss() + " " + getOutcome() + "\n";
+
+          try {
+            Files.write(Paths.get(results), line.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+          }
+          catch (IOException ex) {
+            System.err.println("failed to record the hook run in " + results + ": " + ex);
+          }
+        }
+      }, "loadtest-probe"));
+    }
+
+    hook = new PreCommitHook(args);
+    hook.run();
+  }
+
+  private static String getOutcome() {
+    HookMetrics metrics = (hook == null) ? null : hook.getMetrics();
+    String outcome = (metrics == null) ? null : metrics.getOutcome();
+
+    return (outcome == null) ? "error" : outcome;
+  }
+
+  /**
+   * @return the peak resident set size of this process in kB, from
+   * /proc/self/status (Linux only), or -1
+   */
+  public static long getPeakRss() {
+    Path status = Paths.get("/proc/self/status");
+
+    try {
+      List<String> lines = Files.readAllLines(status, StandardCharsets.US_ASCII);
+      for (String line: lines) {
+        if (line.startsWith("VmHWM:")) {
+          return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+        }
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      // not Linux
+    }
+
+    return -1;
+  }
+}
@@ -0,0 +1,127 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver delaying every statement execution of another driver, so that
+ * a local database answers as slowly as TeamForge does over the network:
+ *
+ * <pre>
+ * jdbc:latency:&lt;millis&gt;:jdbc:h2:tcp://localhost:9092/mem:teamforge
+ * </pre>
+ *
+ * Registered through META-INF/services, so the hook picks it up from its
+ * 'jdbc.url' alone.
+ */
+public class LatencyDriver implements Driver {
+  public static final String PREFIX = "jdbc:latency:";
+
+  static {
+    try {
+      DriverManager.registerDriver(new LatencyDriver());
+    }
+    catch (SQLException ex) {
+      throw new ExceptionInInitializerError(ex);
+    }
+  }
+
+  public static String url(long millis, String url) {
+    return PREFIX + millis + ":" + url;
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) throws SQLException {
+    if (!acceptsURL(url)) {
+      return null;
+    }
+
+    String rest = url.substring(PREFIX.length());
+    int colon = rest.indexOf(':');
+    if (colon == -1) {
+      throw new SQLException("bad url '" + url + "', expected " + PREFIX + "<millis>:<url>");
+    }
+
+    long millis;
+    try {
+      millis = Long.parseLong(rest.substring(0, colon));
+    }
+    catch (NumberFormatException ex) {
+      throw new SQLException("bad latency in url '" + url + "'", ex);
+    }
+
+    Connection conn = DriverManager.getConnection(rest.substring(colon + 1), info);
+    return (Connection) delayed(conn, Connection.class, millis);
+  }
+
+  /**
+   * Wraps the connection, or statement, so that the statements it creates
+   * sleep before executing.
+   */
+  private static Object delayed(final Object target, Class<?> type, final long millis) {
+    return Proxy.newProxyInstance(LatencyDriver.class.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (target instanceof Statement && method.getName().startsWith("execute") && millis > 0) {
+          Thread.sleep(millis);
+        }
+
+        Object result;
+        try {
+          result = method.invoke(target, args);
+        }
+        catch (InvocationTargetException ex) {
+          throw ex.getCause();
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (result != null && Statement.class.isAssignableFrom(returnType)) {
+          return delayed(result, returnType, millis);
+        }
+
+        return result;
+      }
+    });
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url != null && url.startsWith(PREFIX);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+}
@@ -0,0 +1,498 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.tools.Server;
+
+/**
+ * Fires concurrent commits of varying size through the real hook entry point,
+ * one hook process per commit as Subversion runs it, against a local H2
+ * database holding the TeamForge tables the hook queries. All workers start
+ * at once, so the first wave reproduces a burst of simultaneous commits.
+ *
+ * <pre>
+ * mvn clean install && mvn -f benchmarks/pom.xml clean package
+ * java -cp benchmarks/target/benchmarks.jar io.hsiao.devops.svnhooks.benchmarks.LoadTest --commits=300 --concurrency=30 --db-latency=20
+ * </pre>
+ *
+ * In "svn" mode (the default) the repositories are created with svnadmin and
+ * the commits made with svnmucc over file:// URLs, with the hook installed as
+ * their pre-commit hook. In "stub" mode, for hosts without Subversion, the
+ * hook processes are started directly and a shell stand-in for svnlook
+ * serves each transaction.
+ *
+ * Reports the throughput, the p50/p99 latency of the hook processes and of
+ * the whole commits, and the peak RSS of the hook processes (see
+ * {@link HookProbe}). Commits count as rejected when their hook rejected
+ * them, and as failed when they did not go through for any other reason,
+ * including hook errors; latencies cover every commit that finished.
+ */
+public class LoadTest {
+  private static final String[] EXTENSIONS = {".java", ".xml", ".properties", ".md"};
+
+  private String mode = "svn";
+  private int commits = 100;
+  private int concurrency = 10;
+  private int repositories = 4;
+  private int minFiles = 1;
+  private int maxFiles = 50;
+  private int fileSize = 4096;
+  private long dbLatency;
+  private int dbPort = 9092;
+  private String svnBin = "";
+  private String hookConfig;
+  private String work;
+  private List<String> jvmOptions = new ArrayList<>();
+  private List<String> hookArgs = new ArrayList<>(Arrays.asList(Fixtures.arguments()));
+
+  private Path workDir;
+  private Path resultsFile;
+  private Path configFile;
+  private Path contentFile;
+  private String java;
+  private String classPath;
+  private int[] sizes;
+
+  private final AtomicInteger accepted = new AtomicInteger();
+  private final List<Long> commitMillis = Collections.synchronizedList(new ArrayList<Long>());
+  private volatile String firstError;
+
+  public LoadTest(String[] args) throws Exception {
+    for (int idx = 0; idx < args.length; ++idx) {
+      String argument = args[idx];
+      String value = argument.substring(argument.indexOf('=') + 1);
+
+      if (argument.equals("--")) {
+        hookArgs = new ArrayList<>(Arrays.asList(args).subList(idx + 1, args.length));
+        break;
+      }
+      else if (argument.startsWith("--mode=")) {
+        mode = value;
+      }
+      else if (argument.startsWith("--commits=")) {
+        commits = Integer.parseInt(value);
+      }
+      else if (argument.startsWith("--concurrency=")) {
+        concurrency = Integer.parseInt(value);
+      }
+      else if (argument.startsWith("--repositories=")) {
+        repositories = Integer.parseInt(value);
+      }
+      else if (argument.startsWith("--files=")) {
+        String[] range = value.split("-");
+        minFiles = Integer.parseInt(range[0]);
+        maxFiles = Integer.parseInt(range[range.length - 1]);
+      }
+      else if (argument.startsWith("--file-size=")) {
+        fileSize = Integer.parseInt(value);
+      }
+      else if (argument.startsWith("--db-latency=")) {
+        dbLatency = Long.parseLong(value);
+      }
+      else if (argument.startsWith("--db-port=")) {
+        dbPort = Integer.parseInt(value);
+      }
+      else if (argument.startsWith("--svn-bin=")) {
+        svnBin = value.isEmpty() || value.endsWith("/") ? value : value + "/";
+      }
+      else if (argument.startsWith("--hook-config=")) {
+        hookConfig = value;
+      }
+      else if (argument.startsWith("--jvm-options=")) {
+        jvmOptions = new ArrayList<>(Arrays.asList(value.trim().split("\\s+")));
+        jvmOptions.remove("");
+      }
+      else if (argument.startsWith("--work=")) {
+        work = value;
+      }
+      else {
+        throw new IllegalArgumentException("bad argument '" + argument + "', expected --mode=svn|stub, --commits, --concurrency, --repositories, --files=min-max, --file-size, --db-latency, --db-port, --svn-bin, --hook-config, --jvm-options, --work or -- followed by the hook arguments");
+      }
+    }
+
+    if (!mode.equals("svn") && !mode.equals("stub")) {
+      throw new IllegalArgumentException("bad mode '" + mode + "', expected svn or stub");
+    }
+    if (commits < 1 || concurrency < 1 || repositories < 1 || minFiles < 1 || maxFiles < minFiles) {
+      throw new IllegalArgumentException("commits, concurrency, repositories and files must be positive, and --files=min-max ascending");
+    }
+  }
+
+  public void run() throws Exception {
+    workDir = (work == null) ? Files.createTempDirectory("svnhook-load") : Files.createDirectories(Paths.get(work));
+    resultsFile = workDir.resolve("results");
+    Files.deleteIfExists(resultsFile);
+
+    java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    classPath = System.getProperty("java.class.path");
+
+    // same sizes on every run
+    Random random = new Random(42);
+    sizes = new int[commits];
+    for (int idx = 0; idx < commits; ++idx) {
+      sizes[idx] = minFiles + random.nextInt(maxFiles - minFiles + 1);
+    }
+
+    Properties props = Fixtures.properties();
+    Server server = Server.createTcpServer("-tcpPort", String.valueOf(dbPort)).start();
+
+    try {
+      Fixtures.loadTeamForge(props, Fixtures.packageDescription("few"));
+
+      writeConfig(LatencyDriver.url(dbLatency, "jdbc:h2:tcp://localhost:" + dbPort + "/mem:teamforge"));
+      for (int idx = 0; idx < repositories; ++idx) {
+        createRepository(getRepository(idx));
+      }
+
+      System.out.println("firing " + commits + " commits of " + minFiles + "-" + maxFiles + " paths, " + concurrency + " at a time, over " + repositories + " repositories (" + mode + " mode, " + dbLatency + " ms database latency)");
+      long elapsed = fire();
+
+      report(elapsed);
+    }
+    finally {
+      server.stop();
+
+      if (work == null) {
+        delete(workDir);
+      }
+    }
+  }
+
+  /**
+   * @return the wall-clock milliseconds of all commits
+   */
+  private long fire() throws Exception {
+    final AtomicInteger next = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    for (int idx = 0; idx < concurrency; ++idx) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+
+            int commit;
+            while ((commit = next.getAndIncrement()) < commits) {
+              commit(commit);
+            }
+          }
+          catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+
+    long startNanos = System.nanoTime();
+    start.countDown();
+
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private void commit(int commit) {
+    Path repository = getRepository(commit % repositories);
+    long startNanos = System.nanoTime();
+
+    try {
+      Result result;
+      if (mode.equals("svn")) {
+        result = execute(svnCommit(repository, commit));
+      }
+      else {
+        result = execute(stubCommit(repository, commit));
+      }
+
+      commitMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      if (result.exitValue == 0) {
+        accepted.incrementAndGet();
+        return;
+      }
+
+      // told apart from failures by the hook outcomes, see report()
+      if (firstError == null) {
+        firstError = "commit " + commit + " exited with " + result.exitValue + ":\n" + result.output;
+      }
+    }
+    catch (Exception ex) {
+      if (firstError == null) {
+        firstError = "commit " + commit + " failed: " + ex;
+      }
+    }
+  }
+
+  private Path getRepository(int index) {
+    // the package only allows repositories named like Fixtures.REPOSITORY
+    return workDir.resolve("repos").resolve(String.valueOf(index)).resolve(Fixtures.REPOSITORY);
+  }
+
+  private void writeConfig(String jdbcUrl) throws Exception {
+    Properties config = new Properties();
+
+    config.setProperty("jdbc.url", jdbcUrl);
+    config.setProperty("jdbc.username", Fixtures.properties().getProperty("jdbc.username"));
+    config.setProperty("jdbc.password", Fixtures.properties().getProperty("jdbc.password"));
+
+    if (mode.equals("svn")) {
+      config.setProperty("svnlook.path", svnBin + "svnlook");
+    }
+    else {
+      Path txns = Files.createDirectories(workDir.resolve("txns"));
+      Path svnlook = workDir.resolve("svnlook");
+      Files.write(svnlook, Fixtures.resource("fake-svnlook.sh").replace("@DATA_DIR@", txns.toString()).getBytes(StandardCharsets.UTF_8));
+      Files.setPosixFilePermissions(svnlook, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+      config.setProperty("svnlook.path", svnlook.toString());
+    }
+
+    if (hookConfig != null) {
+      Properties extra = new Properties();
+      try (InputStream ins = Files.newInputStream(Paths.get(hookConfig))) {
+        extra.load(ins);
+      }
+      config.putAll(extra);
+    }
+
+    configFile = workDir.resolve("hook.properties");
+    try (Writer writer = Files.newBufferedWriter(configFile, StandardCharsets.UTF_8)) {
+      config.store(writer, "load test");
+    }
+  }
+
+  /**
+   * @return the command line of one hook process
+   */
+  private List<String> hookCommand(String repository, String txnName) {
+    List<String> command = new ArrayList<>();
+
+    command.add(java);
+    command.addAll(jvmOptions);
+    command.add("-Dhook.config=" + configFile);
+    command.add("-D" + HookProbe.RESULTS_PROPERTY + "=" + resultsFile);
+    command.add("-cp");
+    command.add(classPath);
+    command.add(HookProbe.class.getName());
+    command.add(repository);
+    command.add(txnName);
+    command.addAll(hookArgs);
+
+    return command;
+  }
+
+  private void createRepository(Path repository) throws Exception {
+    Files.createDirectories(repository.getParent());
+
+    if (mode.equals("stub")) {
+      Files.createDirectories(repository);
+      return;
+    }
+
+    check(execute(Arrays.asList(svnBin + "svnadmin", "create", repository.toString())), "svnadmin create " + repository);
+    // before the hook is installed, the hook would reject a commit without artifact
+    check(execute(Arrays.asList(svnBin + "svnmucc", "-u", Fixtures.AUTHOR, "-m", "load test", "mkdir", getUrl(repository) + "/trunk")), "svnmucc mkdir trunk");
+
+    StringBuilder script = new StringBuilder("#!/bin/sh\nexec");
+    for (String argument: hookCommand("$1", "$2")) {
+      script.append(' ').append(argument.startsWith("$") ? "\"" + argument + "\"" : quote(argument));
+    }
+    script.append('\n');
+
+    Path hook = repository.resolve("hooks").resolve("pre-commit");
+    Files.write(hook, script.toString().getBytes(StandardCharsets.UTF_8));
+    Files.setPosixFilePermissions(hook, PosixFilePermissions.fromString("rwxr-xr-x"));
+  }
+
+  private List<String> svnCommit(Path repository, int commit) throws Exception {
+    synchronized (this) {
+      if (contentFile == null) {
+        byte[] content = new byte[fileSize];
+        Arrays.fill(content, (byte) 'x');
+        for (int idx = 79; idx < content.length; idx += 80) {
+          content[idx] = '\n';
+        }
+        contentFile = Files.write(workDir.resolve("content"), content);
+      }
+    }
+
+    String folder = getUrl(repository) + "/trunk/commit-" + commit;
+    List<String> command = new ArrayList<>(Arrays.asList(svnBin + "svnmucc", "-u", Fixtures.AUTHOR, "-m", Fixtures.message(), "mkdir", folder));
+    for (int idx = 0; idx < sizes[commit]; ++idx) {
+      command.addAll(Arrays.asList("put", contentFile.toString(), folder + "/File" + idx + EXTENSIONS[idx % EXTENSIONS.length]));
+    }
+
+    return command;
+  }
+
+  private List<String> stubCommit(Path repository, int commit) throws Exception {
+    String txnName = commit + "-" + commit;
+    Path txn = Files.createDirectories(workDir.resolve("txns").resolve(txnName));
+
+    Files.write(txn.resolve("author"), Fixtures.AUTHOR.getBytes(StandardCharsets.UTF_8));
+    Files.write(txn.resolve("log"), Fixtures.message().getBytes(StandardCharsets.UTF_8));
+    Files.write(txn.resolve("changed"), Fixtures.changedLines(sizes[commit]), StandardCharsets.UTF_8);
+
+    return hookCommand(repository.toString(), txnName);
+  }
+
+  private static String getUrl(Path repository) {
+    return "file://" + repository.toAbsolutePath();
+  }
+
+  private static String quote(String argument) {
+    return "'" + argument.replace("'", "'\\''") + "'";
+  }
+
+  private void report(long elapsed) throws Exception {
+    List<Long> hookMillis = new ArrayList<>();
+    Map<String, Integer> outcomes = new TreeMap<>();
+    long peakRss = -1;
+    long totalRss = 0;
+
+    if (Files.isRegularFile(resultsFile)) {
+      for (String line: Files.readAllLines(resultsFile, StandardCharsets.US_ASCII)) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length < 2) {
+          continue;
+        }
+
+        String outcome = (fields.length > 2) ? fields[2] : "unknown";
+        outcomes.put(outcome, outcomes.containsKey(outcome) ? outcomes.get(outcome) + 1 : 1);
+
+        hookMillis.add(Long.parseLong(fields[0]));
+        long rss = Long.parseLong(fields[1]);
+        peakRss = Math.max(peakRss, rss);
+        totalRss += Math.max(rss, 0);
+      }
+    }
+
+    int finished = commitMillis.size();
+    int accepted = this.accepted.get();
+    // a rejected commit is one whose hook said so, anything else that did not go through failed
+    int rejected = Math.min(outcomes.containsKey("rejected") ? outcomes.get("rejected") : 0, commits - accepted);
+    int failed = commits - accepted - rejected;
+
+    System.out.println(String.format("%-12s %d accepted, %d rejected, %d failed in %.1f s, %.1f commits/s", "commits", accepted, rejected, failed, elapsed / 1000.0, finished * 1000.0 / Math.max(elapsed, 1)));
+    System.out.println(String.format("%-12s %s", "commit", percentiles(commitMillis)));
+    System.out.println(String.format("%-12s %s", "hook", percentiles(hookMillis)));
+    System.out.println(String.format("%-12s %s", "outcomes", outcomes.isEmpty() ? "-" : outcomes.toString()));
+    if (peakRss >= 0) {
+      System.out.println(String.format("%-12s max %,d kB, mean %,d kB over %d hook processes", "peak rss", peakRss, totalRss / hookMillis.size(), hookMillis.size()));
+    }
+
+    if (firstError != null) {
+      System.out.println();
+      System.out.println("first error, " + firstError.trim());
+    }
+  }
+
+  private static String percentiles(List<Long> values) {
+    if (values.isEmpty()) {
+      return "-";
+    }
+
+    List<Long> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+
+    return String.format("p50 %,d ms, p99 %,d ms, max %,d ms", percentile(sorted, 50), percentile(sorted, 99), sorted.get(sorted.size() - 1));
+  }
+
+  private static long percentile(List<Long> sorted, int percent) {
+    int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+    return sorted.get(Math.max(index, 0));
+  }
+
+  private static void check(Result result, String what) throws Exception {
+    if (result.exitValue != 0) {
+      throw new Exception(what + " exited with " + result.exitValue + ": " + result.output.trim());
+    }
+  }
+
+  private static class Result {
+    private final int exitValue;
+    private final String output;
+
+    private Result(int exitValue, String output) {
+      this.exitValue = exitValue;
+      this.output = output;
+    }
+  }
+
+  private static Result execute(List<String> command) throws Exception {
+    Process process;
+    try {
+      process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+    catch (IOException ex) {
+      throw new Exception("failed to run '" + command.get(0) + "', for hosts without Subversion pass --mode=stub", ex);
+    }
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (InputStream ins = process.getInputStream()) {
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = ins.read(buffer)) != -1) {
+        bos.write(buffer, 0, count);
+      }
+    }
+
+    return new Result(process.waitFor(), bos.toString("UTF-8"));
+  }
+
+  private static void delete(Path dir) throws IOException {
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  public static void main(String[] args) {
+    try {
+      new LoadTest(args).run();
+    }
+    catch (Exception ex) {
+      System.err.println("load test failed: " + ex);
+      if (ex.getCause() != null) {
+        System.err.println("caused by: " + ex.getCause());
+      }
+      System.exit(1);
+    }
+  }
+}
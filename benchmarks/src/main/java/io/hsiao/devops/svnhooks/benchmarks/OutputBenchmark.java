@@ -0,0 +1,61 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import io.hsiao.devops.svnhooks.HookUtils;
+import io.hsiao.devops.svnhooks.StreamGobbler;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Text handling on both ends of the hook: draining svnlook output through
+ * StreamGobbler and rendering reports through HookUtils.print.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+  @Param({"10", "1000", "100000"})
+  public int lines;
+
+  private String message;
+  private byte[] listing;
+  private PrintStream sink;
+
+  @Setup
+  public void setup() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (String line: Fixtures.changedLines(lines)) {
+      sb.append(line).append("\n");
+    }
+
+    message = sb.toString();
+    listing = message.getBytes("UTF-8");
+    sink = Fixtures.nullPrintStream();
+  }
+
+  @Benchmark
+  public void print() {
+    HookUtils.print(sink, Fixtures.AUTHOR, message);
+  }
+
+  @Benchmark
+  public String streamGobbler() throws Exception {
+    return new StreamGobbler(new ByteArrayInputStream(listing)).call();
+  }
+}
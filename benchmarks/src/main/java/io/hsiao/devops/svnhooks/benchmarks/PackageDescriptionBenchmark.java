@@ -0,0 +1,71 @@
+package io.hsiao.devops.svnhooks.benchmarks;
+
+import io.hsiao.devops.svnhooks.CommitRule;
+import io.hsiao.devops.svnhooks.HookContext;
+import io.hsiao.devops.svnhooks.HookRule;
+import io.hsiao.devops.svnhooks.PathRule;
+import io.hsiao.devops.svnhooks.RulePlan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Everything derived from the package description per commit: the commit
+ * rules reading its tags and the preparation of the path rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackageDescriptionBenchmark {
+  @Param({"few", "many", "long"})
+  public String description;
+
+  private Properties props;
+  private String packageDescription;
+  private List<CommitRule> commitRules;
+  private List<PathRule> pathRules;
+
+  @Setup
+  public void setup() {
+    props = Fixtures.properties();
+    packageDescription = Fixtures.packageDescription(description);
+
+    commitRules = new ArrayList<>();
+    for (CommitRule rule: RulePlan.getDefault().getCommitRules()) {
+      if (rule.getCost() >= HookRule.COST_ARTIFACT) {
+        commitRules.add(rule);
+      }
+    }
+    pathRules = RulePlan.getDefault().getPathRules();
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole) throws Exception {
+    HookContext context = Fixtures.cachedContext(props, packageDescription);
+
+    for (CommitRule rule: commitRules) {
+      rule.check(context);
+    }
+    for (PathRule rule: pathRules) {
+      blackhole.consume(rule.begin(context));
+    }
+  }
+}
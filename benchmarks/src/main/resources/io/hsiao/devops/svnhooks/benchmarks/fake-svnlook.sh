@@ -0,0 +1,29 @@
+#!/bin/sh
+# Stand-in for svnlook, serving a synthetic transaction from @DATA_DIR@, or
+# from @DATA_DIR@/<txn> if there is such a directory (see LoadTest).
+DATA="@DATA_DIR@"
+
+previous=""
+for arg in "$@"; do
+  case "$command:$arg" in
+    :author|:log|:changed|:filesize)
+      command="$arg"
+      ;;
+  esac
+  case "$previous" in
+    -t|--transaction)
+      if [ -d "$DATA/$arg" ]; then
+        DATA="$DATA/$arg"
+      fi
+      ;;
+  esac
+  previous="$arg"
+done
+
+case "$command" in
+  author)   cat "$DATA/author" ;;
+  log)      cat "$DATA/log" ;;
+  changed)  cat "$DATA/changed" ;;
+  filesize) echo 1024 ;;
+  *)        echo "fake svnlook: unsupported arguments: $*" >&2; exit 1 ;;
+esac
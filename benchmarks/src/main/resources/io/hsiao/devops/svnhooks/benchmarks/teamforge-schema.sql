@@ -0,0 +1,33 @@
+-- Subset of the TeamForge schema read by the hook's artifact lookup.
+CREATE TABLE field_value (
+  id VARCHAR(32) PRIMARY KEY,
+  value VARCHAR(255),
+  is_deleted CHAR(1)
+);
+
+CREATE TABLE artifact (
+  id VARCHAR(32) PRIMARY KEY,
+  status_fv VARCHAR(32)
+);
+
+CREATE TABLE relationship (
+  id VARCHAR(32) PRIMARY KEY,
+  origin_id VARCHAR(32),
+  target_id VARCHAR(32),
+  relationship_type_name VARCHAR(64),
+  is_deleted CHAR(1)
+);
+CREATE INDEX relationship_target ON relationship (target_id);
+
+CREATE TABLE frs_release (
+  id VARCHAR(32) PRIMARY KEY,
+  status VARCHAR(32)
+);
+
+CREATE TABLE folder (
+  id VARCHAR(32) PRIMARY KEY,
+  parent_folder_id VARCHAR(32),
+  title VARCHAR(255),
+  description VARCHAR(4000),
+  is_deleted CHAR(1)
+);
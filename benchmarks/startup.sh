@@ -0,0 +1,83 @@
+#!/bin/sh
+# Hook startup benchmark: runs the hook over one synthetic commit with the
+# plain jar, the jar with its class data sharing archive and the native
+# executable, whichever of them were built, and prints wall-clock times.
+# No svnlook or database is needed: a shell stand-in serves the commit and
+# an artifact snapshot answers the lookup.
+#
+#   mvn clean package -Pappcds        (jar, lib/ and the .jsa archive)
+#   mvn package -Pnative              (optional, needs GraalVM)
+#   benchmarks/startup.sh [runs]
+set -e
+
+RUNS=${1:-20}
+BASEDIR=$(cd "$(dirname "$0")/.." && pwd)
+TARGET="$BASEDIR/target"
+JAR=$(cd "$TARGET" && ls svn-precommit-hook-*.jar | head -n 1)
+ARCHIVE="${JAR%.jar}.jsa"
+NATIVE="$TARGET/svn-precommit-hook"
+
+if [ -z "$JAR" ]; then
+  echo "no jar in $TARGET, run 'mvn clean package -Pappcds' first" >&2
+  exit 1
+fi
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+sed "s|@DATA_DIR@|$WORK|" "$BASEDIR/benchmarks/src/main/resources/io/hsiao/devops/svnhooks/benchmarks/fake-svnlook.sh" > "$WORK/svnlook"
+chmod +x "$WORK/svnlook"
+
+echo "trainer" > "$WORK/author"
+printf '[artf1] startup benchmark\n' > "$WORK/log"
+printf 'U   trunk/src/main/java/Main.java\nA   trunk/src/main/resources/\n' > "$WORK/changed"
+
+cat > "$WORK/hook.properties" <<PROPS
+svnlook.path=$WORK/svnlook
+snapshot.file=$WORK/snapshot
+snapshot.max.age=86400000
+PROPS
+
+java -cp "$TARGET/$JAR" io.hsiao.devops.svnhooks.TrainingRun "$WORK/snapshot" > /dev/null
+
+now() {
+  date +%s%N
+}
+
+# run <name> <command...>: prints min, median and mean in milliseconds
+run() {
+  name=$1
+  shift
+
+  "$@" /svn/repo 1-1 > /dev/null 2>&1 || {
+    echo "$name: the synthetic commit was not accepted:" >&2
+    "$@" /svn/repo 1-1 >&2 || true
+    return
+  }
+
+  : > "$WORK/times"
+  i=0
+  while [ $i -lt "$RUNS" ]; do
+    start=$(now)
+    "$@" /svn/repo 1-1 > /dev/null 2>&1
+    end=$(now)
+    echo $(( (end - start) / 1000000 )) >> "$WORK/times"
+    i=$((i + 1))
+  done
+
+  sort -n "$WORK/times" | awk -v name="$name" '
+    { t[NR] = $1; sum += $1 }
+    END { printf "%-10s min=%dms median=%dms mean=%.1fms (%d runs)\n", name, t[1], t[int((NR + 1) / 2)], sum / NR, NR }'
+}
+
+cd "$TARGET"
+
+run "jar" java -Dhook.config="$WORK/hook.properties" -Djava.security.egd=file:///dev/urandom -jar "$JAR"
+
+if [ -f "$ARCHIVE" ]; then
+  run "appcds" java -XX:SharedArchiveFile="$ARCHIVE" -Dhook.config="$WORK/hook.properties" -Djava.security.egd=file:///dev/urandom -jar "$JAR"
+fi
+
+if [ -x "$NATIVE" ]; then
+  run "native" "$NATIVE" -Dhook.config="$WORK/hook.properties"
+fi
@@ -0,0 +1,42 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base class for path rules that judge each path on its own and need no
+ * per-commit state beyond the {@link HookContext}.
+ */
+public abstract class AbstractPathRule implements PathRule {
+  @Override
+  public PathCheck begin(final HookContext context) throws Exception {
+    if (!isEnabled(context)) {
+      return null;
+    }
+
+    return new PathCheck() {
+      @Override
+      public boolean accept(ChangeRecord record) throws Exception {
+        return isViolated(context, record);
+      }
+
+      @Override
+      public List<String> finish() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public String getMessage(List<String> paths) {
+        return AbstractPathRule.this.getMessage(context, paths);
+      }
+    };
+  }
+
+  protected boolean isEnabled(HookContext context) {
+    return true;
+  }
+
+  protected abstract boolean isViolated(HookContext context, ChangeRecord record) throws Exception;
+
+  protected abstract String getMessage(HookContext context, List<String> paths);
+}
@@ -0,0 +1,26 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * "[access:user1,user2]" in the package description restricts who may
+ * commit; with several artifacts, every package must let the author in.
+ */
+public class AccessRule implements CommitRule {
+  @Override
+  public int getCost() {
+    return COST_ARTIFACT;
+  }
+
+  @Override
+  public void check(HookContext context) throws Exception {
+    for (Artifact artifact: context.getArtifacts()) {
+      if (!context.getPackage(artifact).isAccessAllowed(context.getAuthor())) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Sorry, you do not have permission to access the code branch" + context.describe(artifact) + "\n\n");
+        sb.append("If any questions, please contact CM for assistance");
+
+        throw new RejectionException(sb.toString());
+      }
+    }
+  }
+}
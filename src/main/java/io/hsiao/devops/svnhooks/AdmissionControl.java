@@ -0,0 +1,193 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds how many commits of a process may use a shared resource (database
+ * lookups, child processes) at once. Each repository first queues on its own
+ * fair semaphore, so a burst of commits to one repository cannot take every
+ * permit, then on the global fair semaphore. A commit that waited longer
+ * than 'admission.max.wait' is rejected instead of piling up.
+ */
+public class AdmissionControl {
+  public static final String DATABASE = "db";
+  public static final String PROCESS = "process";
+
+  private static final ConcurrentMap<String, AdmissionControl> INSTANCES = new ConcurrentHashMap<>();
+
+  private final String resource;
+  private final int permits;
+  private final int repositoryPermits;
+  private final long maxWait;
+
+  private final Semaphore global;
+  private final ConcurrentMap<String, Semaphore> repositories = new ConcurrentHashMap<>();
+
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final AtomicLong admitted = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  /**
+   * Reads 'admission.&lt;resource&gt;.permits',
+   * 'admission.&lt;resource&gt;.repository.permits' and 'admission.max.wait'.
+   */
+  public AdmissionControl(String resource, Properties props, int defaultPermits) {
+    this.resource = resource;
+    this.permits = Math.max(1, HookUtils.getIntProperty(props, "admission." + resource + ".permits", defaultPermits));
+    this.repositoryPermits = Math.min(permits, Math.max(1, HookUtils.getIntProperty(props, "admission." + resource + ".repository.permits", Math.max(1, permits / 2))));
+    this.maxWait = HookUtils.getIntProperty(props, "admission.max.wait", 30000);
+
+    global = new Semaphore(permits, true);
+  }
+
+  /**
+   * Returns the process-wide admission control of a resource, created from
+   * the given properties on first use.
+   */
+  public static AdmissionControl getInstance(String resource, Properties props, int defaultPermits) {
+    AdmissionControl admission = INSTANCES.get(resource);
+    if (admission == null) {
+      AdmissionControl instance = new AdmissionControl(resource, props, defaultPermits);
+      admission = INSTANCES.putIfAbsent(resource, instance);
+      if (admission == null) {
+        admission = instance;
+      }
+    }
+
+    return admission;
+  }
+
+  public static List<AdmissionControl> getInstances() {
+    return new ArrayList<>(INSTANCES.values());
+  }
+
+  /**
+   * @param metrics the commit asking for admission, which also names its
+   * repository; may be null
+   * @throws RejectionException if no permit was available within the
+   * maximum wait
+   */
+  public Permit acquire(HookMetrics metrics) throws RejectionException, InterruptedException {
+    String repository = (metrics == null || metrics.getRepoPath() == null) ? "" : metrics.getRepoPath();
+
+    Semaphore local = repositories.get(repository);
+    if (local == null) {
+      Semaphore instance = new Semaphore(repositoryPermits, true);
+      local = repositories.putIfAbsent(repository, instance);
+      if (local == null) {
+        local = instance;
+      }
+    }
+
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWait);
+
+    waiting.incrementAndGet();
+    try {
+      if (!local.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        throw reject(start);
+      }
+
+      boolean acquired = false;
+      try {
+        acquired = global.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      finally {
+        if (!acquired) {
+          local.release();
+        }
+      }
+
+      if (!acquired) {
+        throw reject(start);
+      }
+    }
+    finally {
+      waiting.decrementAndGet();
+    }
+
+    long waited = System.nanoTime() - start;
+    record(waited);
+    if (metrics != null) {
+      metrics.record("admission." + resource, waited);
+    }
+
+    return new Permit(local);
+  }
+
+  private RejectionException reject(long start) {
+    timeouts.incrementAndGet();
+    record(System.nanoTime() - start);
+
+    return new RejectionException("The server is busy checking other commits right now (waited " + maxWait + "ms for " + (resource.equals(DATABASE) ? "TeamForge" : "svnlook") + "), please try again in a few minutes");
+  }
+
+  private void record(long waited) {
+    waitNanos.addAndGet(waited);
+    while (true) {
+      long max = maxWaitNanos.get();
+      if (waited <= max || maxWaitNanos.compareAndSet(max, waited)) {
+        break;
+      }
+    }
+  }
+
+  public int getWaitingCount() {
+    return waiting.get();
+  }
+
+  public int getActiveCount() {
+    return permits - global.availablePermits();
+  }
+
+  public String getMetrics() {
+    long count = admitted.get() + timeouts.get();
+
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("admission[" + resource + "]");
+    sb.append(" active=" + getActiveCount());
+    sb.append(" waiting=" + getWaitingCount());
+    sb.append(" max=" + permits);
+    sb.append(" repository.max=" + repositoryPermits);
+    sb.append(" repositories=" + repositories.size());
+    sb.append(" admitted=" + admitted.get());
+    sb.append(" timeouts=" + timeouts.get());
+    sb.append(" wait.avg=" + (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / count)) + "ms");
+    sb.append(" wait.max=" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()) + "ms");
+
+    return sb.toString();
+  }
+
+  /**
+   * Held while using the resource, closing it lets the next commit in.
+   */
+  public class Permit implements AutoCloseable {
+    private final Semaphore local;
+    private boolean released;
+
+    private Permit(Semaphore local) {
+      this.local = local;
+      admitted.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+      if (!released) {
+        released = true;
+        global.release();
+        local.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * TeamForge data the hook needs about one artifact. An artifact constructed
+ * from its id only stands for "not found" and is used for negative caching.
+ */
+public class Artifact {
+  private final String id;
+  private final boolean found;
+
+  private final String status;
+  private final String fixedInRelease;
+  private final String fixedInReleaseStatus;
+  private final String packageDescription;
+
+  public Artifact(String id) {
+    this(id, false, null, null, null, null);
+  }
+
+  public Artifact(String id, String status, String fixedInRelease, String fixedInReleaseStatus, String packageDescription) {
+    this(id, true, status, fixedInRelease, fixedInReleaseStatus, packageDescription);
+  }
+
+  private Artifact(String id, boolean found, String status, String fixedInRelease, String fixedInReleaseStatus, String packageDescription) {
+    this.id = id;
+    this.found = found;
+    this.status = status;
+    this.fixedInRelease = fixedInRelease;
+    this.fixedInReleaseStatus = fixedInReleaseStatus;
+    this.packageDescription = packageDescription;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public boolean isFound() {
+    return found;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public String getFixedInRelease() {
+    return fixedInRelease;
+  }
+
+  public String getFixedInReleaseStatus() {
+    return fixedInReleaseStatus;
+  }
+
+  public String getPackageDescription() {
+    return packageDescription;
+  }
+}
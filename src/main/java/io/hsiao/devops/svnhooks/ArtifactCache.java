@@ -0,0 +1,316 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of artifact lookups with separate time-to-live for found and
+ * "not found" results. When 'cache.file' is set the entries are persisted,
+ * so that short-lived hook processes can share them. Expired artifacts are
+ * kept for another 'cache.stale.ttl', as the fallback while TeamForge is
+ * unavailable (see {@link #getStale(String)}).
+ */
+public class ArtifactCache {
+  private static final int FILE_VERSION = 2;
+  private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+  private static ArtifactCache instance;
+
+  private final long ttl;
+  private final long negativeTtl;
+  private final long staleTtl;
+  private final int maxSize;
+  private final Path file;
+
+  private final LinkedHashMap<String, CacheEntry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong negativeHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong saveFailures = new AtomicLong();
+
+  private boolean dirty;
+
+  public ArtifactCache(Properties props) {
+    ttl = HookUtils.getIntProperty(props, "cache.ttl", 300000);
+    negativeTtl = HookUtils.getIntProperty(props, "cache.negative.ttl", 30000);
+    staleTtl = HookUtils.getIntProperty(props, "cache.stale.ttl", 86400000);
+    maxSize = HookUtils.getIntProperty(props, "cache.max.size", 10000);
+
+    String path = HookUtils.getProperty(props, "cache.file", "");
+    file = path.isEmpty() ? null : Paths.get(path);
+
+    entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+        if (size() > maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the process-wide cache, loading its backing file (if any) on first use.
+   */
+  public static synchronized ArtifactCache getInstance(Properties props) {
+    if (instance == null) {
+      instance = new ArtifactCache(props);
+      instance.load();
+    }
+
+    return instance;
+  }
+
+  /**
+   * @return the cached artifact (possibly a "not found" one), or null on a miss
+   */
+  public synchronized Artifact get(String artifactId) {
+    CacheEntry entry = entries.get(artifactId);
+
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    long now = System.currentTimeMillis();
+    if (entry.expiresAt <= now) {
+      if (!entry.isStale(now)) {
+        entries.remove(artifactId);
+        dirty = true;
+      }
+      expirations.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+
+    if (entry.artifact.isFound()) {
+      hits.incrementAndGet();
+    }
+    else {
+      negativeHits.incrementAndGet();
+    }
+
+    return entry.artifact;
+  }
+
+  /**
+   * @return the found artifact even if expired, as long as it is not older
+   * than 'cache.stale.ttl' past its expiry; null otherwise
+   */
+  public synchronized Artifact getStale(String artifactId) {
+    CacheEntry entry = entries.get(artifactId);
+
+    if (entry == null || !entry.artifact.isFound() || entry.expiresAt + staleTtl <= System.currentTimeMillis()) {
+      return null;
+    }
+
+    return entry.artifact;
+  }
+
+  public synchronized void put(Artifact artifact) {
+    long expiresAt = System.currentTimeMillis() + (artifact.isFound() ? ttl : negativeTtl);
+
+    entries.put(artifact.getId(), new CacheEntry(artifact, expiresAt));
+    dirty = true;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    dirty = true;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public String getMetrics() {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("cache[artifact]");
+    sb.append(" size=" + size());
+    sb.append(" max=" + maxSize);
+    sb.append(" hits=" + hits.get());
+    sb.append(" negativeHits=" + negativeHits.get());
+    sb.append(" misses=" + misses.get());
+    sb.append(" expirations=" + expirations.get());
+    sb.append(" evictions=" + evictions.get());
+    sb.append(" saveFailures=" + saveFailures.get());
+
+    return sb.toString();
+  }
+
+  /**
+   * Writes the live and stale entries to the backing file, if one is
+   * configured and anything changed since the last load or save. The file
+   * is replaced atomically, so concurrent hooks never read a partial file.
+   */
+  public void save() throws IOException {
+    if (file == null) {
+      return;
+    }
+
+    List<CacheEntry> snapshot;
+    synchronized (this) {
+      if (!dirty) {
+        return;
+      }
+      snapshot = new ArrayList<>(entries.values());
+      dirty = false;
+    }
+
+    try {
+      write(snapshot);
+    }
+    catch (IOException ex) {
+      saveFailures.incrementAndGet();
+      synchronized (this) {
+        // try again with the next save
+        dirty = true;
+      }
+      throw ex;
+    }
+  }
+
+  private void write(List<CacheEntry> snapshot) throws IOException {
+    long now = System.currentTimeMillis();
+    Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+
+    try {
+      try (OutputStream os = Files.newOutputStream(temp);
+           DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os))) {
+        dos.writeInt(FILE_VERSION);
+        for (CacheEntry entry: snapshot) {
+          if (entry.expiresAt <= now && !entry.isStale(now)) {
+            continue;
+          }
+
+          Artifact artifact = entry.artifact;
+
+          dos.writeBoolean(true);
+          dos.writeLong(entry.expiresAt);
+          dos.writeUTF(artifact.getId());
+          dos.writeBoolean(artifact.isFound());
+          if (artifact.isFound()) {
+            writeNullableString(dos, artifact.getStatus());
+            writeNullableString(dos, artifact.getFixedInRelease());
+            writeNullableString(dos, artifact.getFixedInReleaseStatus());
+            writeNullableString(dos, artifact.getPackageDescription());
+          }
+        }
+        dos.writeBoolean(false);
+      }
+
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private void load() {
+    if (file == null || !Files.isRegularFile(file)) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+
+    try (InputStream is = Files.newInputStream(file);
+         DataInputStream dis = new DataInputStream(new BufferedInputStream(is))) {
+      if (dis.readInt() != FILE_VERSION) {
+        return;
+      }
+
+      synchronized (this) {
+        while (dis.readBoolean()) {
+          long expiresAt = dis.readLong();
+          String artifactId = dis.readUTF();
+
+          Artifact artifact;
+          if (dis.readBoolean()) {
+            artifact = new Artifact(artifactId, readNullableString(dis), readNullableString(dis), readNullableString(dis), readNullableString(dis));
+          }
+          else {
+            artifact = new Artifact(artifactId);
+          }
+
+          CacheEntry entry = new CacheEntry(artifact, expiresAt);
+          if (expiresAt > now || entry.isStale(now)) {
+            entries.put(artifactId, entry);
+          }
+        }
+      }
+    }
+    catch (IOException ex) {
+      // a corrupt or truncated cache file only costs us a database round trip
+    }
+  }
+
+  /**
+   * Length-prefixed UTF-8, as package descriptions may exceed the 64 KB of
+   * writeUTF; a length of -1 stands for null.
+   */
+  private static void writeNullableString(DataOutputStream dos, String value) throws IOException {
+    if (value == null) {
+      dos.writeInt(-1);
+      return;
+    }
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+  private static String readNullableString(DataInputStream dis) throws IOException {
+    int length = dis.readInt();
+    if (length == -1) {
+      return null;
+    }
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("corrupt cache file: bad string length " + length);
+    }
+
+    byte[] bytes = new byte[length];
+    dis.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private class CacheEntry {
+    private final Artifact artifact;
+    private final long expiresAt;
+
+    private CacheEntry(Artifact artifact, long expiresAt) {
+      this.artifact = artifact;
+      this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return true if expired, but still good enough for a fallback
+     */
+    private boolean isStale(long now) {
+      return artifact.isFound() && expiresAt <= now && expiresAt + staleTtl > now;
+    }
+  }
+}
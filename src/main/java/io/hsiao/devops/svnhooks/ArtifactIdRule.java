@@ -0,0 +1,17 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * The commit message must start with one or more artifact ids, e.g.
+ * "[artf12306]" or "[artf12306][artf12307]".
+ */
+public class ArtifactIdRule implements CommitRule {
+  @Override
+  public int getCost() {
+    return COST_LOCAL;
+  }
+
+  @Override
+  public void check(HookContext context) throws Exception {
+    context.getArtifactIds();
+  }
+}
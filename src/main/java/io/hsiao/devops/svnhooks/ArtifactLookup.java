@@ -0,0 +1,408 @@
+package io.hsiao.devops.svnhooks;
+
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Resolves artifacts through the {@link ArtifactCache}, then the
+ * {@link ArtifactSnapshot} if it is fresh enough, querying TeamForge over
+ * the {@link ConnectionPool} when neither knows the artifact. The artifacts
+ * of a commit are queried together, with one "IN (...)" statement.
+ *
+ * A query gets at most 'artifact.lookup.timeout' milliseconds once the
+ * {@link AdmissionControl} let it through, whatever the driver does, and
+ * repeated failures open the {@link CircuitBreaker}. While TeamForge is
+ * unavailable, or too busy with other commits to admit the query,
+ * 'breaker.open.policy' decides:
+ *
+ * <pre>
+ * stale   answer from expired cache entries or an outdated snapshot, reject the commit without either (default)
+ * allow   the same, but accept the commit without the artifact checks when nothing is known
+ * reject  reject every commit that needs the artifact
+ * </pre>
+ */
+public class ArtifactLookup {
+  public static final String POLICY_STALE = "stale";
+  public static final String POLICY_ALLOW = "allow";
+  public static final String POLICY_REJECT = "reject";
+
+  // ids per statement; shorter lists are padded to the next power of two,
+  // so that a connection prepares at most a handful of distinct statements
+  private static final int MAX_BATCH_SIZE = 32;
+  private static final Map<Integer, String> ARTIFACT_QUERIES = new HashMap<>();
+
+  static {
+    for (int size = 1; size <= MAX_BATCH_SIZE; size *= 2) {
+      ARTIFACT_QUERIES.put(size, getSQLPreparedStatement(size));
+    }
+  }
+
+  // lookups wait on admission and the database, not on processes, so they
+  // stay off the bounded command pool
+  private static final ExecutorService lookupExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "artifact-lookup");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final Properties props;
+  private final HookMetrics metrics;
+
+  private volatile PreparedStatement running;
+  private volatile boolean stopped;
+  private volatile boolean cancelled;
+
+  public ArtifactLookup(Properties props) {
+    this(props, null);
+  }
+
+  public ArtifactLookup(Properties props, HookMetrics metrics) {
+    this.props = props;
+    this.metrics = metrics;
+  }
+
+  public static String getOpenPolicy(Properties props) {
+    return HookUtils.getProperty(props, "breaker.open.policy", POLICY_STALE);
+  }
+
+  /**
+   * @return the artifact, or a "not found" artifact if TeamForge has no
+   * (properly released) artifact with this id
+   * @throws ArtifactUnavailableException if TeamForge is unavailable and
+   * there is nothing to fall back to
+   */
+  public Artifact lookup(String artifactId) throws Exception {
+    return lookup(Collections.singletonList(artifactId)).get(0);
+  }
+
+  /**
+   * @return the artifacts in the order of their ids, see
+   * {@link #lookup(String)}
+   */
+  public List<Artifact> lookup(List<String> artifactIds) throws Exception {
+    ArtifactCache cache = ArtifactCache.getInstance(props);
+    long maxAge = HookUtils.getIntProperty(props, "snapshot.max.age", 900000);
+
+    Map<String, Artifact> found = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+
+    for (String artifactId: artifactIds) {
+      if (found.containsKey(artifactId) || missing.contains(artifactId)) {
+        continue;
+      }
+
+      Artifact artifact = cache.get(artifactId);
+      if (artifact == null) {
+        artifact = lookupSnapshot(artifactId, maxAge);
+      }
+
+      if (artifact != null) {
+        found.put(artifactId, artifact);
+      }
+      else {
+        missing.add(artifactId);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      found.putAll(query(missing));
+    }
+
+    List<Artifact> artifacts = new ArrayList<>(artifactIds.size());
+    for (String artifactId: artifactIds) {
+      artifacts.add(found.get(artifactId));
+    }
+
+    return artifacts;
+  }
+
+  @SuppressWarnings("try")
+  private Map<String, Artifact> query(List<String> artifactIds) throws Exception {
+    CircuitBreaker breaker = CircuitBreaker.getInstance(props);
+
+    if (!breaker.allowRequest()) {
+      record("breaker.open");
+      return fallback(artifactIds, null);
+    }
+
+    AdmissionControl admission = AdmissionControl.getInstance(AdmissionControl.DATABASE, props, HookUtils.getIntProperty(props, "jdbc.pool.max.size", 8));
+
+    // waiting for a permit is queueing behind other commits, not TeamForge
+    // being slow, so it is neither timed nor a failure of the breaker
+    AdmissionControl.Permit permit;
+    try {
+      permit = admission.acquire(metrics);
+    }
+    catch (RejectionException ex) {
+      return fallback(artifactIds, ex);
+    }
+
+    Map<String, Artifact> artifacts;
+
+    long start = System.nanoTime();
+    try (AdmissionControl.Permit held = permit) {
+      artifacts = queryWithTimeout(artifactIds);
+    }
+    catch (SQLException | TimeoutException ex) {
+      if (cancelled) {
+        throw ex;
+      }
+      breaker.recordFailure();
+      return fallback(artifactIds, ex);
+    }
+    finally {
+      if (metrics != null) {
+        metrics.stop("db.query", start);
+      }
+    }
+    breaker.recordSuccess();
+
+    ArtifactCache cache = ArtifactCache.getInstance(props);
+    for (Artifact artifact: artifacts.values()) {
+      cache.put(artifact);
+    }
+
+    try {
+      cache.save();
+    }
+    catch (Exception ex) {
+      // the cache file must never decide the fate of a commit
+      System.err.println("failed to save the artifact cache: " + ex);
+    }
+
+    return artifacts;
+  }
+
+  /**
+   * @return the last known state of the artifacts, unless the policy is
+   * 'reject'
+   */
+  private Map<String, Artifact> fallback(List<String> artifactIds, Exception cause) throws ArtifactUnavailableException {
+    Map<String, Artifact> artifacts = new HashMap<>();
+
+    for (String artifactId: artifactIds) {
+      Artifact artifact = null;
+
+      if (!POLICY_REJECT.equals(getOpenPolicy(props))) {
+        artifact = ArtifactCache.getInstance(props).getStale(artifactId);
+        if (artifact == null) {
+          artifact = lookupSnapshot(artifactId, Long.MAX_VALUE);
+        }
+      }
+
+      if (artifact == null) {
+        throw new ArtifactUnavailableException("failed to look up artifact '" + artifactId + "' in TeamForge" + (cause == null ? ", lookups are suspended after repeated failures" : ""), cause);
+      }
+
+      record("artifact.stale");
+      artifacts.put(artifactId, artifact);
+    }
+
+    return artifacts;
+  }
+
+  private void record(String event) {
+    if (metrics != null) {
+      metrics.record(event, 0);
+    }
+  }
+
+  /**
+   * Runs the query on its own thread and abandons it after
+   * 'artifact.lookup.timeout', in case the driver hangs despite its own
+   * timeouts, e.g. on a network that drops packets silently.
+   */
+  private Map<String, Artifact> queryWithTimeout(final List<String> artifactIds) throws Exception {
+    long timeout = HookUtils.getIntProperty(props, "artifact.lookup.timeout", 15000);
+    if (timeout <= 0) {
+      return queryArtifacts(artifactIds);
+    }
+
+    Future<Map<String, Artifact>> task = lookupExecutor.submit(new Callable<Map<String, Artifact>>() {
+      @Override
+      public Map<String, Artifact> call() throws Exception {
+        return queryArtifacts(artifactIds);
+      }
+    });
+
+    try {
+      return task.get(timeout, TimeUnit.MILLISECONDS);
+    }
+    catch (ExecutionException ex) {
+      throw (ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : ex;
+    }
+    catch (TimeoutException ex) {
+      stop();
+      task.cancel(true);
+      throw new TimeoutException("no answer from TeamForge within " + timeout + "ms");
+    }
+    catch (InterruptedException ex) {
+      stop();
+      task.cancel(true);
+      throw ex;
+    }
+  }
+
+  /**
+   * Looks the artifacts up in the background. Cancelling the returned future
+   * also cancels a database query in progress, see {@link #cancel()}.
+   */
+  public Future<List<Artifact>> submit(final List<String> artifactIds) {
+    return lookupExecutor.submit(new Callable<List<Artifact>>() {
+      @Override
+      public List<Artifact> call() throws Exception {
+        return lookup(artifactIds);
+      }
+    });
+  }
+
+  /**
+   * Abandons the lookup, cancelling its query if the database is already
+   * working on it. The pooled connection is discarded with the failed query.
+   */
+  public void cancel() {
+    cancelled = true;
+    stop();
+  }
+
+  private void stop() {
+    stopped = true;
+
+    PreparedStatement pstmt = running;
+    if (pstmt != null) {
+      try {
+        pstmt.cancel();
+      }
+      catch (SQLException ex) {
+        // the query fails or completes on its own, the result is dropped anyway
+      }
+    }
+  }
+
+  /**
+   * @return the artifact, or null if there is no snapshot, it is older than
+   * maxAge milliseconds or it does not know the artifact
+   */
+  private Artifact lookupSnapshot(String artifactId, long maxAge) {
+    String file = HookUtils.getProperty(props, "snapshot.file", "");
+    if (file.isEmpty()) {
+      return null;
+    }
+
+    ArtifactSnapshot snapshot = ArtifactSnapshot.getInstance(Paths.get(file));
+    if (snapshot == null || System.currentTimeMillis() - snapshot.getCreatedAt() > maxAge) {
+      return null;
+    }
+
+    Artifact artifact = snapshot.lookup(artifactId);
+    if (artifact != null && metrics != null) {
+      metrics.record("snapshot.hit", 0);
+    }
+
+    return artifact;
+  }
+
+  /**
+   * @return every given artifact, "not found" ones included
+   */
+  private Map<String, Artifact> queryArtifacts(List<String> artifactIds) throws Exception {
+    ConnectionPool pool = ConnectionPool.getInstance(props);
+
+    Map<String, Artifact> artifacts = new HashMap<>();
+
+    try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+      try {
+        for (int from = 0; from < artifactIds.size(); from += MAX_BATCH_SIZE) {
+          queryBatch(conn, artifactIds.subList(from, Math.min(from + MAX_BATCH_SIZE, artifactIds.size())), artifacts);
+        }
+      }
+      catch (SQLException ex) {
+        conn.invalidate();
+        throw ex;
+      }
+    }
+
+    for (String artifactId: artifactIds) {
+      if (!artifacts.containsKey(artifactId)) {
+        artifacts.put(artifactId, new Artifact(artifactId));
+      }
+    }
+
+    return artifacts;
+  }
+
+  private void queryBatch(ConnectionPool.PooledConnection conn, List<String> artifactIds, Map<String, Artifact> artifacts) throws Exception {
+    int size = 1;
+    while (size < artifactIds.size()) {
+      size *= 2;
+    }
+
+    PreparedStatement pstmt = conn.prepareStatement(ARTIFACT_QUERIES.get(size));
+    for (int idx = 0; idx < size; ++idx) {
+      // padded with the last id, which does not change the result
+      pstmt.setString(idx + 1, artifactIds.get(Math.min(idx, artifactIds.size() - 1)));
+    }
+
+    running = pstmt;
+    try {
+      if (stopped) {
+        throw new InterruptedException("artifact lookup cancelled");
+      }
+
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          String artifactId = rs.getString("artifact_id");
+
+          // the first release wins, as it did for single lookups
+          if (!artifacts.containsKey(artifactId)) {
+            artifacts.put(artifactId, new Artifact(artifactId, rs.getString("artifact_status"), rs.getString("fixed_in_release"), rs.getString("fixed_in_release_status"), rs.getString("package_description")));
+          }
+        }
+      }
+    }
+    finally {
+      running = null;
+    }
+  }
+
+  private static String getSQLPreparedStatement(int size) {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("SELECT a.id artifact_id, fv.value artifact_status, fr.status fixed_in_release_status, f1.title fixed_in_release, f2.description package_description\n");
+    sb.append("FROM artifact a INNER JOIN field_value fv ON a.status_fv = fv.id\n");
+    sb.append(" INNER JOIN relationship r ON r.target_id = a.id\n");
+    sb.append(" INNER JOIN frs_release fr ON r.origin_id = fr.id\n");
+    sb.append(" INNER JOIN folder f1 ON fr.id = f1.id\n");
+    sb.append(" INNER JOIN folder f2 ON f2.id = f1.parent_folder_id\n");
+    sb.append("WHERE a.id IN (?");
+    for (int idx = 1; idx < size; ++idx) {
+      sb.append(", ?");
+    }
+    sb.append(")\n");
+    sb.append(" AND r.relationship_type_name = 'ArtifactResolvedRelease' AND r.is_deleted = '0'\n");
+    sb.append(" AND fv.is_deleted = '0'\n");
+    sb.append(" AND f1.is_deleted = '0'\n");
+    sb.append(" AND f2.is_deleted = '0'\n");
+
+    return sb.toString().trim();
+  }
+}
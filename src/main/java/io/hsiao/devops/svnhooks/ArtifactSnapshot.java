@@ -0,0 +1,295 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only, memory-mapped snapshot of TeamForge artifact data written by
+ * {@link SnapshotRefresher}. The file holds a table of distinct strings,
+ * a table of releases and an index of artifacts sorted by their numeric id,
+ * so a lookup is a binary search over fixed-size records:
+ *
+ * <pre>
+ * header:    magic, version, created at, #strings, #releases, #artifacts
+ * strings:   #strings offsets, then length-prefixed UTF-8 bytes
+ * releases:  title, status, package description (string numbers)
+ * artifacts: numeric id, status (string number), release number
+ * </pre>
+ */
+public class ArtifactSnapshot {
+  private static final int MAGIC = 0x41525453;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+  private static final int RELEASE_SIZE = 4 + 4 + 4;
+  private static final int ARTIFACT_SIZE = 8 + 4 + 4;
+
+  private static final String ARTIFACT_PREFIX = "artf";
+
+  private static volatile ArtifactSnapshot current;
+
+  private final Path file;
+  private final long lastModified;
+  private final MappedByteBuffer buffer;
+
+  private final long createdAt;
+  private final int stringCount;
+  private final int releaseCount;
+  private final int artifactCount;
+  private final int stringsOffset;
+  private final int releasesOffset;
+  private final int artifactsOffset;
+
+  private ArtifactSnapshot(Path file) throws IOException {
+    this.file = file;
+    this.lastModified = Files.getLastModifiedTime(file).toMillis();
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("not an artifact snapshot: " + file);
+    }
+
+    createdAt = buffer.getLong(8);
+    stringCount = buffer.getInt(16);
+    releaseCount = buffer.getInt(20);
+    artifactCount = buffer.getInt(24);
+
+    stringsOffset = HEADER_SIZE;
+    releasesOffset = buffer.getInt(HEADER_SIZE + 4 * stringCount);
+    artifactsOffset = releasesOffset + RELEASE_SIZE * releaseCount;
+
+    if (artifactsOffset + (long) ARTIFACT_SIZE * artifactCount != buffer.capacity()) {
+      throw new IOException("truncated artifact snapshot: " + file);
+    }
+  }
+
+  /**
+   * Returns the snapshot in 'snapshot.file', remapping it when the file was
+   * replaced since the last call.
+   *
+   * @return the snapshot, or null if none is configured or it is unreadable
+   */
+  public static ArtifactSnapshot getInstance(Path file) {
+    ArtifactSnapshot snapshot = current;
+
+    try {
+      if (!Files.isRegularFile(file)) {
+        return null;
+      }
+
+      if (snapshot == null || !snapshot.file.equals(file) || snapshot.lastModified != Files.getLastModifiedTime(file).toMillis()) {
+        snapshot = new ArtifactSnapshot(file);
+        current = snapshot;
+      }
+
+      return snapshot;
+    }
+    catch (IOException ex) {
+      // a missing or corrupt snapshot only costs us a database round trip
+      return null;
+    }
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  public int getArtifactCount() {
+    return artifactCount;
+  }
+
+  /**
+   * @return the artifact, or null if the snapshot does not know it
+   */
+  public Artifact lookup(String artifactId) {
+    long key = getKey(artifactId);
+    if (key < 0) {
+      return null;
+    }
+
+    int low = 0;
+    int high = artifactCount - 1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int offset = artifactsOffset + mid * ARTIFACT_SIZE;
+      long id = buffer.getLong(offset);
+
+      if (id < key) {
+        low = mid + 1;
+      }
+      else if (id > key) {
+        high = mid - 1;
+      }
+      else {
+        int release = releasesOffset + buffer.getInt(offset + 12) * RELEASE_SIZE;
+
+        return new Artifact(artifactId, getString(buffer.getInt(offset + 8)), getString(buffer.getInt(release)), getString(buffer.getInt(release + 4)), getString(buffer.getInt(release + 8)));
+      }
+    }
+
+    return null;
+  }
+
+  private String getString(int index) {
+    if (index < 0) {
+      return null;
+    }
+
+    int offset = buffer.getInt(stringsOffset + 4 * index);
+    int length = buffer.getInt(offset);
+
+    byte[] bytes = new byte[length];
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset + 4);
+    slice.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8).intern();
+  }
+
+  /**
+   * @return the numeric part of an artifact id, or -1 if the id has no
+   * canonical numeric form
+   */
+  private static long getKey(String artifactId) {
+    if (!artifactId.startsWith(ARTIFACT_PREFIX) || artifactId.length() == ARTIFACT_PREFIX.length() || artifactId.length() > ARTIFACT_PREFIX.length() + 18) {
+      return -1;
+    }
+
+    String digits = artifactId.substring(ARTIFACT_PREFIX.length());
+    if (digits.length() > 1 && digits.charAt(0) == '0') {
+      return -1;
+    }
+
+    for (int idx = 0; idx < digits.length(); ++idx) {
+      if (!Character.isDigit(digits.charAt(idx))) {
+        return -1;
+      }
+    }
+
+    return Long.parseLong(digits);
+  }
+
+  /**
+   * Collects releases and artifacts and writes them as a snapshot file.
+   */
+  public static class Builder {
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringTable = new ArrayList<>();
+
+    private final Map<String, Integer> releases = new HashMap<>();
+    private final List<int[]> releaseTable = new ArrayList<>();
+
+    private final TreeMap<Long, int[]> artifacts = new TreeMap<>();
+
+    public void addRelease(String releaseId, String title, String status, String packageDescription) {
+      if (!releases.containsKey(releaseId)) {
+        releases.put(releaseId, releaseTable.size());
+        releaseTable.add(new int[] {intern(title), intern(status), intern(packageDescription)});
+      }
+    }
+
+    /**
+     * @return false if the artifact was skipped, as its release is unknown
+     * or its id has no numeric form
+     */
+    public boolean addArtifact(String artifactId, String status, String releaseId) {
+      Integer release = releases.get(releaseId);
+      long key = getKey(artifactId);
+
+      if (release == null || key < 0) {
+        return false;
+      }
+
+      artifacts.put(key, new int[] {intern(status), release});
+      return true;
+    }
+
+    private int intern(String value) {
+      if (value == null) {
+        return -1;
+      }
+
+      Integer index = strings.get(value);
+      if (index == null) {
+        index = stringTable.size();
+        strings.put(value, index);
+        stringTable.add(value);
+      }
+
+      return index;
+    }
+
+    /**
+     * Writes the snapshot next to the target and moves it into place, so
+     * readers never map a partial file.
+     */
+    public void write(Path file, long createdAt) throws IOException {
+      Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+
+      try {
+        List<byte[]> encoded = new ArrayList<>(stringTable.size());
+        for (String value: stringTable) {
+          encoded.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (OutputStream os = Files.newOutputStream(temp);
+             DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os))) {
+          dos.writeInt(MAGIC);
+          dos.writeInt(VERSION);
+          dos.writeLong(createdAt);
+          dos.writeInt(encoded.size());
+          dos.writeInt(releaseTable.size());
+          dos.writeInt(artifacts.size());
+
+          // string offsets, followed by the offset of the release table
+          int offset = HEADER_SIZE + 4 * (encoded.size() + 1);
+          for (byte[] bytes: encoded) {
+            dos.writeInt(offset);
+            offset += 4 + bytes.length;
+          }
+          dos.writeInt(offset);
+
+          for (byte[] bytes: encoded) {
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+          }
+
+          for (int[] release: releaseTable) {
+            dos.writeInt(release[0]);
+            dos.writeInt(release[1]);
+            dos.writeInt(release[2]);
+          }
+
+          for (Map.Entry<Long, int[]> artifact: artifacts.entrySet()) {
+            dos.writeLong(artifact.getKey());
+            dos.writeInt(artifact.getValue()[0]);
+            dos.writeInt(artifact.getValue()[1]);
+          }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.Arrays;
+
+/**
+ * Every artifact must be in one of the --allowable-statuses.
+ */
+public class ArtifactStatusRule implements CommitRule {
+  @Override
+  public int getCost() {
+    return COST_ARTIFACT;
+  }
+
+  @Override
+  public void check(HookContext context) throws Exception {
+    String[] statuses = context.getOptions().getStatuses();
+    for (Artifact artifact: context.getArtifacts()) {
+      String artifactStatus = artifact.getStatus();
+
+      if (!Arrays.asList(statuses).contains(artifactStatus)) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Status '" + artifactStatus + "'" + context.describe(artifact) + " is not allowed for code check-in\n\n");
+        sb.append("Current allowed statuses are: " + Arrays.toString(statuses) + "\n\n");
+        sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+        throw new RejectionException(sb.toString());
+      }
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * Signals that TeamForge could not be asked about an artifact (it failed,
+ * timed out or the {@link CircuitBreaker} is open) and that no earlier
+ * answer was at hand to fall back to.
+ */
+public class ArtifactUnavailableException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public ArtifactUnavailableException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
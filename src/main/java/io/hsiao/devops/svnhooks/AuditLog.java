@@ -0,0 +1,298 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only record of every hook decision in 'audit.dir'. Commits only
+ * put their {@link AuditRecord} on a bounded queue (records are dropped,
+ * and counted, rather than ever blocking a commit); a background writer
+ * drains it in batches and appends each batch as one gzip member. Files
+ * roll over daily and at about 'audit.max.file.size':
+ *
+ * <pre>
+ * audit-20261018-000.gz, audit-20261018-001.gz, ...
+ * </pre>
+ *
+ * A batch goes out in a single write under a file lock, so hook processes
+ * sharing the directory never interleave. Concatenated gzip members are a
+ * valid gzip stream, see {@link AuditQuery} for reading them back.
+ */
+public class AuditLog {
+  public static final String FILE_PREFIX = "audit-";
+  public static final String FILE_SUFFIX = ".gz";
+
+  // wakes the writer up when closing
+  private static final AuditRecord CLOSE = new AuditRecord("", null, null, null, null, null, null, 0, null, 0, new ArrayList<String>());
+
+  private static AuditLog instance;
+
+  private final File dir;
+  private final int batchSize;
+  private final long flushInterval;
+  private final long maxFileSize;
+  private final int retentionDays;
+  private final int maxPaths;
+
+  private final BlockingQueue<AuditRecord> queue;
+  private final Thread writer;
+
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  private volatile boolean closed;
+  private String purgedDay;
+
+  private AuditLog(Properties props) {
+    dir = new File(HookUtils.getProperty(props, "audit.dir", ""));
+    batchSize = Math.max(1, HookUtils.getIntProperty(props, "audit.batch.size", 256));
+    flushInterval = HookUtils.getIntProperty(props, "audit.flush.interval", 1000);
+    maxFileSize = HookUtils.getIntProperty(props, "audit.max.file.size", 64 * 1024 * 1024);
+    retentionDays = HookUtils.getIntProperty(props, "audit.retention.days", 90);
+    maxPaths = HookUtils.getIntProperty(props, "audit.max.paths", 1000);
+
+    queue = new ArrayBlockingQueue<>(Math.max(1, HookUtils.getIntProperty(props, "audit.queue.size", 10000)));
+
+    writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "audit-writer");
+    writer.setDaemon(true);
+    writer.start();
+
+    // the hook exits right after its decision, which must not be lost
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        close();
+      }
+    }, "audit-shutdown"));
+  }
+
+  /**
+   * Returns the process-wide audit log, started on first use.
+   *
+   * @return the audit log, or null if 'audit.dir' is not set
+   */
+  public static synchronized AuditLog getInstance(Properties props) {
+    if (instance == null && !HookUtils.getProperty(props, "audit.dir", "").isEmpty()) {
+      instance = new AuditLog(props);
+    }
+
+    return instance;
+  }
+
+  public static synchronized AuditLog getInstance() {
+    return instance;
+  }
+
+  public int getMaxPaths() {
+    return maxPaths;
+  }
+
+  /**
+   * Queues the record without blocking.
+   *
+   * @return false if the record was dropped, as the queue is full or the
+   * log is closed
+   */
+  public boolean append(AuditRecord record) {
+    if (closed || !queue.offer(record)) {
+      dropped.incrementAndGet();
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Writes whatever is queued and stops the writer.
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    // the writer is busy anyway if this does not fit
+    queue.offer(CLOSE);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain() {
+    List<AuditRecord> batch = new ArrayList<>(batchSize);
+
+    while (true) {
+      try {
+        AuditRecord first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+        }
+      }
+      catch (InterruptedException ex) {
+        return;
+      }
+
+      queue.drainTo(batch, batchSize - batch.size());
+      batch.remove(CLOSE);
+
+      if (!batch.isEmpty()) {
+        write(batch);
+        batch.clear();
+      }
+
+      if (closed && queue.isEmpty()) {
+        return;
+      }
+    }
+  }
+
+  private void write(List<AuditRecord> batch) {
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(128 * batch.size());
+
+      try (Writer out = new OutputStreamWriter(new GZIPOutputStream(bos), StandardCharsets.UTF_8)) {
+        for (AuditRecord record: batch) {
+          out.write(record.toLine());
+        }
+      }
+
+      String day = formatDay(System.currentTimeMillis());
+
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        throw new IOException("failed to create audit directory '" + dir + "'");
+      }
+
+      append(day, bos.toByteArray());
+
+      written.addAndGet(batch.size());
+
+      purge(day);
+    }
+    catch (IOException ex) {
+      failures.incrementAndGet();
+      HookUtils.print(System.err, null, "failed to write " + batch.size() + " audit records", ex);
+    }
+  }
+
+  /**
+   * Appends the batch to the current file under its lock. The size is
+   * checked again once the lock is held, as other processes may have filled
+   * the file meanwhile; a file still ends up at most one batch over
+   * 'audit.max.file.size'.
+   */
+  @SuppressWarnings("try")
+  private void append(String day, byte[] bytes) throws IOException {
+    while (true) {
+      try (FileOutputStream os = new FileOutputStream(getCurrentFile(day), true); FileLock lock = os.getChannel().lock()) {
+        long size = os.getChannel().size();
+        if (size == 0 || size < maxFileSize) {
+          os.write(bytes);
+          return;
+        }
+      }
+    }
+  }
+
+  private File getCurrentFile(String day) {
+    for (int index = 0; ; ++index) {
+      File file = new File(dir, FILE_PREFIX + day + "-" + String.format("%03d", index) + FILE_SUFFIX);
+      if (!file.exists() || file.length() < maxFileSize) {
+        return file;
+      }
+    }
+  }
+
+  /**
+   * Deletes the files older than 'audit.retention.days', once a day.
+   */
+  private void purge(String day) {
+    if (retentionDays <= 0 || day.equals(purgedDay)) {
+      return;
+    }
+    purgedDay = day;
+
+    String oldest = formatDay(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+
+    for (File file: listFiles(dir)) {
+      if (getDay(file).compareTo(oldest) < 0) {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * @return the audit files of the directory, oldest first
+   */
+  public static List<File> listFiles(File dir) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return new ArrayList<>();
+    }
+
+    List<File> audits = new ArrayList<>();
+    for (File file: files) {
+      String name = file.getName();
+      if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX) && name.length() >= FILE_PREFIX.length() + 8 + FILE_SUFFIX.length() && file.isFile()) {
+        audits.add(file);
+      }
+    }
+
+    // the names sort by day, then index
+    File[] sorted = audits.toArray(new File[audits.size()]);
+    Arrays.sort(sorted);
+
+    return Arrays.asList(sorted);
+  }
+
+  /**
+   * @return the day of an audit file, e.g. "20261018"
+   */
+  public static String getDay(File file) {
+    return file.getName().substring(FILE_PREFIX.length(), FILE_PREFIX.length() + 8);
+  }
+
+  public static String formatDay(long millis) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(new Date(millis));
+  }
+
+  public String getMetrics() {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("audit");
+    sb.append(" queued=" + queue.size());
+    sb.append(" written=" + written.get());
+    sb.append(" dropped=" + dropped.get());
+    sb.append(" failures=" + failures.get());
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,207 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Prints the {@link AuditLog} records matching all given filters, e.g. all
+ * rejections of a repository during the last day:
+ *
+ * <pre>
+ * java -cp svn-precommit-hook.jar io.hsiao.devops.svnhooks.AuditQuery --repo=repo --outcome=rejected --since=1d
+ * </pre>
+ *
+ * Files are streamed one line at a time, and files of days before --since
+ * are not opened at all.
+ */
+public class AuditQuery {
+  private String dir;
+  private String repo;
+  private String outcome;
+  private String author;
+  private String artifact;
+  private String rule;
+  private String since = "";
+  private boolean showPaths;
+
+  public AuditQuery(String[] args, String defaultDir) throws Exception {
+    dir = defaultDir;
+
+    for (String argument: args) {
+      if (argument.startsWith("--dir=")) {
+        dir = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--repo=")) {
+        repo = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--outcome=")) {
+        outcome = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--author=")) {
+        author = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--artifact=")) {
+        artifact = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--rule=")) {
+        rule = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--since=")) {
+        since = parseSince(HookUtils.getArgumentValue(argument));
+      }
+      else if (argument.equals("--paths")) {
+        showPaths = true;
+      }
+      else {
+        throw new Exception("bad argument '" + argument + "', expected --dir, --repo, --outcome, --author, --artifact, --rule, --since or --paths");
+      }
+    }
+
+    if (dir == null || dir.isEmpty()) {
+      throw new Exception("no audit directory, set 'audit.dir' or pass --dir");
+    }
+  }
+
+  /**
+   * @param value a duration back from now ("30m", "12h", "7d") or a UTC
+   * date ("2026-10-18")
+   * @return the earliest record time to report, in the records' format
+   */
+  private static String parseSince(String value) throws Exception {
+    long now = System.currentTimeMillis();
+
+    if (value.matches("\\d+[mhd]")) {
+      long amount = Long.parseLong(value.substring(0, value.length() - 1));
+      TimeUnit unit = value.endsWith("m") ? TimeUnit.MINUTES : value.endsWith("h") ? TimeUnit.HOURS : TimeUnit.DAYS;
+      return AuditRecord.formatTime(now - unit.toMillis(amount));
+    }
+
+    try {
+      SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+      format.setTimeZone(TimeZone.getTimeZone("UTC"));
+      format.setLenient(false);
+      return AuditRecord.formatTime(format.parse(value).getTime());
+    }
+    catch (ParseException ex) {
+      throw new Exception("bad --since value '" + value + "', expected e.g. 30m, 12h, 7d or 2026-10-18");
+    }
+  }
+
+  /**
+   * @return the number of matching records
+   */
+  public int run(PrintStream out) throws IOException {
+    // "2026-10-18T..." -> "20261018"
+    String sinceDay = since.isEmpty() ? "" : since.substring(0, 10).replace("-", "");
+    int count = 0;
+
+    for (File file: AuditLog.listFiles(new File(dir))) {
+      if (AuditLog.getDay(file).compareTo(sinceDay) < 0) {
+        continue;
+      }
+
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 65536)), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          AuditRecord record = AuditRecord.parse(line);
+          if (record != null && matches(record)) {
+            print(out, record);
+            ++count;
+          }
+        }
+      }
+      catch (EOFException | ZipException ex) {
+        // a batch cut short by a crash, the records before it are fine
+        System.err.println("skipped the damaged end of " + file + ": " + ex);
+      }
+    }
+
+    return count;
+  }
+
+  private boolean matches(AuditRecord record) {
+    if (record.getTime().compareTo(since) < 0) {
+      return false;
+    }
+
+    if (repo != null && (record.getRepoPath() == null || !(record.getRepoPath().equals(repo) || HookUtils.getBasename(record.getRepoPath()).equals(repo)))) {
+      return false;
+    }
+
+    return matchesAny(rule, record.getRule()) && matchesAny(artifact, record.getArtifactId()) && matches(outcome, record.getOutcome()) && matches(author, record.getAuthor());
+  }
+
+  private static boolean matches(String filter, String value) {
+    return filter == null || filter.equals(value);
+  }
+
+  /**
+   * @param values comma separated, e.g. the rules or artifacts of a commit
+   */
+  private static boolean matchesAny(String filter, String values) {
+    return filter == null || (values != null && ("," + values + ",").contains("," + filter + ","));
+  }
+
+  private void print(PrintStream out, AuditRecord record) {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append(record.getTime());
+    sb.append(' ').append(orDash(record.getOutcome()));
+    sb.append(' ').append(orDash(record.getRepoPath()));
+    sb.append(' ').append(orDash(record.getTxnName()));
+    sb.append(' ').append(orDash(record.getAuthor()));
+    sb.append(' ').append(orDash(record.getArtifactId()));
+    sb.append(' ').append(record.getElapsedMillis()).append("ms");
+
+    if (record.getRule() != null) {
+      sb.append(' ').append(record.getRule());
+    }
+    if (record.getPathCount() > 0) {
+      sb.append(" (").append(ReportWriter.formatCount(record.getPathCount())).append(record.getPathCount() == 1 ? " path)" : " paths)");
+    }
+    if (record.getDetail() != null) {
+      sb.append(": ").append(record.getDetail());
+    }
+
+    out.println(sb);
+
+    if (showPaths) {
+      for (String path: record.getPaths()) {
+        out.println("    " + path);
+      }
+      if (record.getPaths().size() < record.getPathCount()) {
+        out.println("    ...and " + ReportWriter.formatCount(record.getPathCount() - record.getPaths().size()) + " more");
+      }
+    }
+  }
+
+  private static String orDash(String value) {
+    return (value == null) ? "-" : value;
+  }
+
+  public static void main(String[] args) {
+    try {
+      String dir = HookUtils.getProperty(HookConfig.load().getProperties(), "audit.dir", "");
+
+      int count = new AuditQuery(args, dir).run(System.out);
+      System.err.println(count + " records");
+    }
+    catch (Exception ex) {
+      HookUtils.print(System.err, null, "failed to query the audit log", ex);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package io.hsiao.devops.svnhooks;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * One hook decision in the {@link AuditLog}. Stored as a single line of tab
+ * separated fields, with tabs, line breaks and backslashes escaped:
+ *
+ * <pre>
+ * time repo txn author artifact outcome rule elapsed-ms detail #paths paths...
+ * </pre>
+ *
+ * Times are UTC in ISO 8601 form, so that they sort and compare as text.
+ * Missing values are stored as empty fields.
+ */
+public class AuditRecord {
+  private static final int FIXED_FIELDS = 10;
+
+  private final String time;
+  private final String repoPath;
+  private final String txnName;
+  private final String author;
+  private final String artifactId;
+  private final String outcome;
+  private final String rule;
+  private final long elapsedMillis;
+  private final String detail;
+  private final int pathCount;
+  private final List<String> paths;
+
+  public AuditRecord(String time, String repoPath, String txnName, String author, String artifactId, String outcome, String rule, long elapsedMillis, String detail, int pathCount, List<String> paths) {
+    this.time = time;
+    this.repoPath = repoPath;
+    this.txnName = txnName;
+    this.author = author;
+    this.artifactId = artifactId;
+    this.outcome = outcome;
+    this.rule = rule;
+    this.elapsedMillis = elapsedMillis;
+    this.detail = detail;
+    this.pathCount = pathCount;
+    this.paths = Collections.unmodifiableList(paths);
+  }
+
+  /**
+   * @param maxPaths at most this many paths are kept, the count still
+   * tells how many there were
+   */
+  public static AuditRecord of(HookMetrics metrics, String author, String detail, RejectionException rejection, int maxPaths) {
+    List<String> paths = Collections.emptyList();
+    String rule = null;
+
+    if (rejection != null) {
+      rule = rejection.getRule();
+      paths = rejection.getPaths();
+    }
+
+    return new AuditRecord(formatTime(metrics.getStartMillis()), metrics.getRepoPath(), metrics.getTxnName(), author, metrics.getArtifactId(), metrics.getOutcome(), rule, metrics.getElapsedMillis(), detail, paths.size(), new ArrayList<>(paths.subList(0, Math.min(paths.size(), maxPaths))));
+  }
+
+  public static String formatTime(long millis) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(new Date(millis));
+  }
+
+  public String getTime() {
+    return time;
+  }
+
+  public String getRepoPath() {
+    return repoPath;
+  }
+
+  public String getTxnName() {
+    return txnName;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public String getOutcome() {
+    return outcome;
+  }
+
+  public String getRule() {
+    return rule;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public String getDetail() {
+    return detail;
+  }
+
+  public int getPathCount() {
+    return pathCount;
+  }
+
+  public List<String> getPaths() {
+    return paths;
+  }
+
+  public String toLine() {
+    StringBuilder sb = new StringBuilder(256);
+
+    appendField(sb, time);
+    appendField(sb, repoPath);
+    appendField(sb, txnName);
+    appendField(sb, author);
+    appendField(sb, artifactId);
+    appendField(sb, outcome);
+    appendField(sb, rule);
+    appendField(sb, String.valueOf(elapsedMillis));
+    appendField(sb, detail);
+    appendField(sb, String.valueOf(pathCount));
+    for (String path: paths) {
+      appendField(sb, path);
+    }
+
+    // replace the trailing tab
+    sb.setCharAt(sb.length() - 1, '\n');
+
+    return sb.toString();
+  }
+
+  /**
+   * @return the record, or null if the line is not one
+   */
+  public static AuditRecord parse(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+
+    for (int idx = 0; idx < line.length(); ++idx) {
+      char ch = line.charAt(idx);
+
+      if (ch == '\t') {
+        fields.add(sb.toString());
+        sb.setLength(0);
+      }
+      else if (ch == '\\' && idx + 1 < line.length()) {
+        char next = line.charAt(++idx);
+        sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+      }
+      else {
+        sb.append(ch);
+      }
+    }
+    fields.add(sb.toString());
+
+    if (fields.size() < FIXED_FIELDS) {
+      return null;
+    }
+
+    try {
+      return new AuditRecord(fields.get(0), toValue(fields.get(1)), toValue(fields.get(2)), toValue(fields.get(3)), toValue(fields.get(4)), toValue(fields.get(5)), toValue(fields.get(6)), Long.parseLong(fields.get(7)), toValue(fields.get(8)), Integer.parseInt(fields.get(9)), fields.subList(FIXED_FIELDS, fields.size()));
+    }
+    catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  private static String toValue(String field) {
+    return field.isEmpty() ? null : field;
+  }
+
+  private static void appendField(StringBuilder sb, String value) {
+    if (value != null) {
+      for (int idx = 0; idx < value.length(); ++idx) {
+        char ch = value.charAt(idx);
+
+        switch (ch) {
+          case '\t':
+            sb.append("\\t");
+            break;
+          case '\n':
+            sb.append("\\n");
+            break;
+          case '\r':
+            sb.append("\\r");
+            break;
+          case '\\':
+            sb.append("\\\\");
+            break;
+          default:
+            sb.append(ch);
+        }
+      }
+    }
+
+    sb.append('\t');
+  }
+}
@@ -0,0 +1,64 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Every path must live under one of the "[branch:...]" prefixes of the
+ * package description; with several artifacts, under a prefix of any of
+ * their packages.
+ */
+public class BranchRule implements PathRule {
+  @Override
+  public int getCost() {
+    return COST_ARTIFACT;
+  }
+
+  @Override
+  public PathCheck begin(final HookContext context) throws Exception {
+    final PathTrie branches = getBranchTrie(context.getPackages());
+
+    return new PathCheck() {
+      @Override
+      public boolean accept(ChangeRecord record) {
+        return !branches.matches(record.getPath());
+      }
+
+      @Override
+      public List<String> finish() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public String getMessage(List<String> paths) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Below changes are committing to the wrong branch, please check\n\n");
+        ReportWriter.appendPaths(sb, paths, context.getProperties());
+        sb.append("\n");
+        sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+        return sb.toString();
+      }
+    };
+  }
+
+  /**
+   * @return the package's own trie, or one trie of the union of all
+   * packages' branches, built once per commit
+   */
+  private static PathTrie getBranchTrie(List<PackageDescription> packages) throws Exception {
+    Set<String> branches = new LinkedHashSet<>();
+
+    for (PackageDescription description: packages) {
+      if (description.getBranches() == null) {
+        throw new Exception("invalid package description: branch missing");
+      }
+      branches.addAll(description.getBranches());
+    }
+
+    return (packages.size() == 1) ? packages.get(0).getBranchTrie() : PathTrie.ofPrefixes(branches);
+  }
+}
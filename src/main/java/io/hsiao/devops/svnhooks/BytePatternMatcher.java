@@ -0,0 +1,126 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over up to 64 byte patterns. Unlike
+ * {@link SubstringMatcher} it scans a stream chunk by chunk: the state of
+ * the automaton is carried from one chunk to the next, so matches spanning
+ * chunk boundaries are found without buffering.
+ */
+public class BytePatternMatcher {
+  public static final int MAX_PATTERNS = 64;
+
+  private static final int COLUMNS = 256;
+
+  // dense transition table, one row of 256 entries per state
+  private final int[] transitions;
+  private final long[] outputs;
+
+  public BytePatternMatcher(List<byte[]> patterns) {
+    if (patterns.size() > MAX_PATTERNS) {
+      throw new IllegalArgumentException("at most " + MAX_PATTERNS + " patterns are supported");
+    }
+
+    // trie of the patterns
+    List<int[]> rows = new ArrayList<>();
+    List<Long> masks = new ArrayList<>();
+    rows.add(new int[COLUMNS]);
+    masks.add(0L);
+
+    for (int idx = 0; idx < patterns.size(); ++idx) {
+      if (patterns.get(idx).length == 0) {
+        throw new IllegalArgumentException("empty patterns are not supported");
+      }
+
+      int state = 0;
+      for (byte value: patterns.get(idx)) {
+        int col = value & 0xff;
+        if (rows.get(state)[col] == 0) {
+          rows.get(state)[col] = rows.size();
+          rows.add(new int[COLUMNS]);
+          masks.add(0L);
+        }
+        state = rows.get(state)[col];
+      }
+      masks.set(state, masks.get(state) | (1L << idx));
+    }
+
+    // breadth-first failure links, folded into the transition table
+    int[] failure = new int[rows.size()];
+    Deque<Integer> queue = new ArrayDeque<>();
+
+    for (int col = 0; col < COLUMNS; ++col) {
+      int next = rows.get(0)[col];
+      if (next != 0) {
+        queue.add(next);
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      masks.set(state, masks.get(state) | masks.get(failure[state]));
+
+      for (int col = 0; col < COLUMNS; ++col) {
+        int next = rows.get(state)[col];
+        if (next != 0) {
+          failure[next] = rows.get(failure[state])[col];
+          queue.add(next);
+        }
+        else {
+          rows.get(state)[col] = rows.get(failure[state])[col];
+        }
+      }
+    }
+
+    transitions = new int[rows.size() * COLUMNS];
+    outputs = new long[rows.size()];
+    for (int state = 0; state < rows.size(); ++state) {
+      System.arraycopy(rows.get(state), 0, transitions, state * COLUMNS, COLUMNS);
+      outputs[state] = masks.get(state);
+    }
+  }
+
+  /**
+   * @return a fresh scan, one per stream
+   */
+  public Scan newScan() {
+    return new Scan();
+  }
+
+  public class Scan {
+    private int state;
+    private long found;
+
+    private Scan() {
+    }
+
+    /**
+     * Feeds the next chunk of the stream.
+     *
+     * @return bit i is set if the stream so far contains pattern i
+     */
+    public long update(byte[] buffer, int offset, int length) {
+      int current = state;
+      long matched = found;
+
+      int end = offset + length;
+      for (int idx = offset; idx < end; ++idx) {
+        current = transitions[(current << 8) | (buffer[idx] & 0xff)];
+        matched |= outputs[current];
+      }
+
+      state = current;
+      found = matched;
+
+      return matched;
+    }
+
+    public long getFound() {
+      return found;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Change source over records that are already in memory.
+ */
+public class ChangeListSource implements ChangeSource {
+  private final Iterator<ChangeRecord> iterator;
+
+  public ChangeListSource(List<ChangeRecord> records) {
+    this.iterator = records.iterator();
+  }
+
+  @Override
+  public ChangeRecord next() {
+    return iterator.hasNext() ? iterator.next() : null;
+  }
+
+  @Override
+  public void close() {
+  }
+}
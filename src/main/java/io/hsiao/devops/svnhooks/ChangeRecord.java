@@ -0,0 +1,70 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * One line of 'svnlook changed' output, e.g. "A   trunk/src/Foo.java".
+ */
+public class ChangeRecord {
+  private final String type;
+  private final String path;
+
+  public ChangeRecord(String type, String path) {
+    this.type = type;
+    this.path = path;
+  }
+
+  /**
+   * Splits a line into its status column and path without regular
+   * expressions; the status token is interned since only a handful of
+   * distinct values exist.
+   *
+   * @return the parsed record, or null for a blank line
+   */
+  public static ChangeRecord parse(String line) {
+    int end = line.length();
+    while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+      --end;
+    }
+
+    int start = 0;
+    while (start < end && Character.isWhitespace(line.charAt(start))) {
+      ++start;
+    }
+
+    if (start == end) {
+      return null;
+    }
+
+    int typeEnd = start;
+    while (typeEnd < end && !Character.isWhitespace(line.charAt(typeEnd))) {
+      ++typeEnd;
+    }
+
+    int pathStart = typeEnd;
+    while (pathStart < end && Character.isWhitespace(line.charAt(pathStart))) {
+      ++pathStart;
+    }
+
+    return new ChangeRecord(line.substring(start, typeEnd).intern(), line.substring(pathStart, end));
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public boolean isAdded() {
+    return type.equalsIgnoreCase("A");
+  }
+
+  public boolean isDirectory() {
+    return path.endsWith("/");
+  }
+
+  @Override
+  public String toString() {
+    return type + "   " + path;
+  }
+}
@@ -0,0 +1,17 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * Sequence of changed paths fed to the path rules.
+ */
+public interface ChangeSource extends AutoCloseable {
+  /**
+   * @return the next record, or null once the listing is exhausted
+   */
+  ChangeRecord next() throws Exception;
+
+  /**
+   * Stops producing records, e.g. because the commit was already rejected.
+   */
+  @Override
+  void close();
+}
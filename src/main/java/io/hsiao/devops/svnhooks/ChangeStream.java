@@ -0,0 +1,83 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Streams 'svnlook changed' output as {@link ChangeRecord}s while the command
+ * is still running. Records pass through a bounded queue, so memory stays
+ * flat for huge transactions and svnlook is throttled when the checks fall
+ * behind; closing the stream early kills the command.
+ */
+public class ChangeStream implements ChangeSource {
+  private static final ChangeRecord END = new ChangeRecord("", "");
+
+  private final BlockingQueue<ChangeRecord> queue;
+  private final Future<Integer> producer;
+
+  private boolean finished;
+
+  public ChangeStream(String[] command, int capacity) {
+    this(command, capacity, null);
+  }
+
+  public ChangeStream(final String[] command, int capacity, final HookMetrics metrics) {
+    queue = new ArrayBlockingQueue<>(capacity);
+
+    producer = CommandRunner.submitStreaming(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        try {
+          String[] output = new String[1];
+
+          int exitValue = CommandRunner.stream(command, new CommandRunner.LineHandler() {
+            @Override
+            public boolean handle(String line) throws Exception {
+              ChangeRecord record = ChangeRecord.parse(line);
+              if (record != null) {
+                queue.put(record);
+              }
+              return true;
+            }
+          }, output, metrics);
+
+          if (exitValue != 0) {
+            throw new Exception(output[0]);
+          }
+
+          queue.put(END);
+          return exitValue;
+        }
+        catch (Exception ex) {
+          // unblock the consumer, the failure itself surfaces through the future
+          queue.clear();
+          queue.offer(END);
+          throw ex;
+        }
+      }
+    });
+  }
+
+  @Override
+  public ChangeRecord next() throws Exception {
+    if (finished) {
+      return null;
+    }
+
+    ChangeRecord record = queue.take();
+    if (record == END) {
+      finished = true;
+      CommandRunner.await(producer);
+      return null;
+    }
+
+    return record;
+  }
+
+  @Override
+  public void close() {
+    producer.cancel(true);
+  }
+}
@@ -0,0 +1,201 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops querying TeamForge after 'breaker.failure.threshold' consecutive
+ * failed lookups, so that commits fall back at once instead of each waiting
+ * for its own timeout (see {@link ArtifactLookup}). Once the breaker has
+ * been open for 'breaker.open.duration', a single trial lookup is let
+ * through; it closes the breaker again if it succeeds.
+ *
+ * When 'breaker.file' is set, the state is shared with the other hook
+ * processes through that file. Concurrent updates may lose a failure count,
+ * which only delays tripping by a commit.
+ */
+public class CircuitBreaker {
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static CircuitBreaker instance;
+
+  private final int threshold;
+  private final long openDuration;
+  private final Path file;
+
+  private int failures;
+  private long openUntil;
+  private long loadedAt = -1;
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong shortCircuits = new AtomicLong();
+  private final AtomicLong totalFailures = new AtomicLong();
+  private final AtomicLong trips = new AtomicLong();
+
+  public CircuitBreaker(Properties props) {
+    threshold = HookUtils.getIntProperty(props, "breaker.failure.threshold", 5);
+    openDuration = HookUtils.getIntProperty(props, "breaker.open.duration", 30000);
+
+    String path = HookUtils.getProperty(props, "breaker.file", "");
+    file = path.isEmpty() ? null : Paths.get(path);
+  }
+
+  /**
+   * Returns the process-wide breaker of the TeamForge database.
+   */
+  public static synchronized CircuitBreaker getInstance(Properties props) {
+    if (instance == null) {
+      instance = new CircuitBreaker(props);
+    }
+
+    return instance;
+  }
+
+  /**
+   * @return false if the database is not to be called now; true if it may,
+   * in which case the outcome must be reported through
+   * {@link #recordSuccess()} or {@link #recordFailure()}
+   */
+  public synchronized boolean allowRequest() {
+    if (threshold <= 0) {
+      return true;
+    }
+
+    load();
+
+    long now = System.currentTimeMillis();
+    if (failures >= threshold) {
+      if (now < openUntil) {
+        shortCircuits.incrementAndGet();
+        return false;
+      }
+
+      // half open: this call is the trial, the others keep failing fast until it is back
+      openUntil = now + openDuration;
+      save();
+    }
+
+    calls.incrementAndGet();
+    return true;
+  }
+
+  public synchronized void recordSuccess() {
+    if (threshold <= 0) {
+      return;
+    }
+
+    load();
+
+    if (failures > 0) {
+      failures = 0;
+      openUntil = 0;
+      save();
+    }
+  }
+
+  public synchronized void recordFailure() {
+    totalFailures.incrementAndGet();
+
+    if (threshold <= 0) {
+      return;
+    }
+
+    load();
+
+    if (++failures >= threshold) {
+      if (failures == threshold) {
+        trips.incrementAndGet();
+      }
+      openUntil = System.currentTimeMillis() + openDuration;
+    }
+    save();
+  }
+
+  public synchronized State getState() {
+    load();
+
+    if (threshold <= 0 || failures < threshold) {
+      return State.CLOSED;
+    }
+
+    return (System.currentTimeMillis() < openUntil) ? State.OPEN : State.HALF_OPEN;
+  }
+
+  /**
+   * Picks up the state other processes wrote since the last look.
+   */
+  private void load() {
+    if (file == null) {
+      return;
+    }
+
+    try {
+      if (!Files.isRegularFile(file)) {
+        if (loadedAt != -1) {
+          // removed by hand, i.e. reset
+          failures = 0;
+          openUntil = 0;
+          loadedAt = -1;
+        }
+        return;
+      }
+
+      long modified = Files.getLastModifiedTime(file).toMillis();
+      if (modified == loadedAt) {
+        return;
+      }
+
+      String[] fields = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim().split(" ");
+      failures = Integer.parseInt(fields[0]);
+      openUntil = Long.parseLong(fields[1]);
+      loadedAt = modified;
+    }
+    catch (IOException | RuntimeException ex) {
+      // an unreadable or garbled file counts as a closed breaker
+      failures = 0;
+      openUntil = 0;
+    }
+  }
+
+  private void save() {
+    if (file == null) {
+      return;
+    }
+
+    try {
+      Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+      try {
+        Files.write(temp, (failures + " " + openUntil + "\n").getBytes(StandardCharsets.US_ASCII));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        loadedAt = Files.getLastModifiedTime(file).toMillis();
+      }
+      finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+    catch (IOException ex) {
+      // this process still has the state, the others find out on their own
+    }
+  }
+
+  public String getMetrics() {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("breaker[db]");
+    sb.append(" state=" + getState());
+    sb.append(" calls=" + calls.get());
+    sb.append(" shortCircuits=" + shortCircuits.get());
+    sb.append(" failures=" + totalFailures.get());
+    sb.append(" trips=" + trips.get());
+
+    return sb.toString();
+  }
+}
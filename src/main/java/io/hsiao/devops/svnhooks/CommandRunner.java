@@ -1,23 +1,384 @@
 package io.hsiao.devops.svnhooks;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs external commands (svnlook) on a shared, bounded pool. Commands are
+ * given as argument arrays, so paths containing whitespace or quotes are
+ * passed through untouched, and each one is killed when it exceeds its
+ * timeout or its future is cancelled (the thread running it is interrupted).
+ */
 public class CommandRunner {
-  public static int run(String command, String[] message) throws Exception {
-    Process process = Runtime.getRuntime().exec(command);
+  private static final String ENCODING = "UTF-8";
 
-    FutureTask<String> stdoutGlobber = new FutureTask<>(new StreamGobbler(process.getInputStream()));
-    FutureTask<String> stderrGlobber = new FutureTask<>(new StreamGobbler(process.getErrorStream()));
+  private static final int DEFAULT_MAX_PROCESSES = 2 * Runtime.getRuntime().availableProcessors();
+  private static final long DEFAULT_TIMEOUT = 60000;
 
-    new Thread(stdoutGlobber).start();
-    new Thread(stderrGlobber).start();
+  // how often the watchdog checks streaming commands for cancellation
+  private static final long WATCHDOG_INTERVAL = 100;
 
-    String stdoutMessage = stdoutGlobber.get();
-    String stderrMessage = stderrGlobber.get();
+  private static volatile ExecutorService commandExecutor;
+  private static volatile AdmissionControl processAdmission;
+  private static volatile long defaultTimeout = DEFAULT_TIMEOUT;
 
-    int exitValue = process.waitFor();
-    message[0] = (exitValue == 0) ? stdoutMessage : stderrMessage;
+  private static final ExecutorService streamExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("command-stream"));
+  private static final ScheduledExecutorService watchdogExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("command-watchdog"));
 
-    return exitValue;
+  /**
+   * Sizes the shared pool and the process admission control from 'command.max.processes' and the default timeout
+   * from 'command.timeout'. Only the first call in a process has any effect.
+   */
+  public static synchronized void configure(Properties props) {
+    if (commandExecutor != null) {
+      return;
+    }
+
+    int maxProcesses = HookUtils.getIntProperty(props, "command.max.processes", DEFAULT_MAX_PROCESSES);
+
+    defaultTimeout = HookUtils.getIntProperty(props, "command.timeout", (int) DEFAULT_TIMEOUT);
+    processAdmission = AdmissionControl.getInstance(AdmissionControl.PROCESS, props, maxProcesses);
+    commandExecutor = Executors.newFixedThreadPool(maxProcesses, new NamedThreadFactory("command"));
+  }
+
+  private static ExecutorService getCommandExecutor() {
+    if (commandExecutor == null) {
+      configure(new Properties());
+    }
+    return commandExecutor;
+  }
+
+  private static AdmissionControl getProcessAdmission() {
+    if (processAdmission == null) {
+      configure(new Properties());
+    }
+    return processAdmission;
+  }
+
+  public static int run(String[] command, String[] message) throws Exception {
+    return run(command, message, defaultTimeout);
+  }
+
+  /**
+   * Runs the command in the calling thread, waiting at most timeout
+   * milliseconds for it to finish.
+   *
+   * @param message receives stdout on success, stderr otherwise
+   * @return the exit value of the command
+   */
+  public static int run(String[] command, String[] message, long timeout) throws Exception {
+    return run(command, message, timeout, null);
+  }
+
+  /**
+   * @param metrics receives the process count and timing of the command, may
+   * be null
+   */
+  @SuppressWarnings("try")
+  public static int run(String[] command, String[] message, long timeout, HookMetrics metrics) throws Exception {
+    try (AdmissionControl.Permit permit = getProcessAdmission().acquire(metrics)) {
+      return spawn(command, message, timeout, metrics);
+    }
+  }
+
+  private static int spawn(String[] command, String[] message, long timeout, HookMetrics metrics) throws Exception {
+    long start = System.nanoTime();
+    Process process = new ProcessBuilder(command).start();
+    if (metrics != null) {
+      metrics.processSpawned();
+    }
+
+    try {
+      process.getOutputStream().close();
+
+      FutureTask<String> stdoutGlobber = new FutureTask<>(new StreamGobbler(process.getInputStream()));
+      FutureTask<String> stderrGlobber = new FutureTask<>(new StreamGobbler(process.getErrorStream()));
+
+      streamExecutor.execute(stdoutGlobber);
+      streamExecutor.execute(stderrGlobber);
+
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+      String stdoutMessage;
+      String stderrMessage;
+      try {
+        stdoutMessage = stdoutGlobber.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        stderrMessage = stderrGlobber.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      catch (TimeoutException ex) {
+        throw new TimeoutException("command timed out after " + timeout + "ms: " + Arrays.toString(command));
+      }
+
+      int exitValue = process.waitFor();
+      message[0] = (exitValue == 0) ? stdoutMessage : stderrMessage;
+
+      return exitValue;
+    }
+    finally {
+      // no-op for a finished process, kills it on timeout or cancellation
+      process.destroy();
+
+      if (metrics != null) {
+        metrics.stop(getPhase(command), start);
+      }
+    }
+  }
+
+  /**
+   * Queues the command on the shared pool. The returned future yields the
+   * command's stdout, or fails with its stderr as message when the exit
+   * value is non-zero. Cancelling the future kills the process.
+   */
+  public static Future<String> submit(final String[] command) {
+    return submit(command, defaultTimeout, null);
+  }
+
+  public static Future<String> submit(final String[] command, final HookMetrics metrics) {
+    return submit(command, defaultTimeout, metrics);
+  }
+
+  public static Future<String> submit(final String[] command, final long timeout, final HookMetrics metrics) {
+    return getCommandExecutor().submit(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        String[] output = new String[1];
+
+        int exitValue = run(command, output, timeout, metrics);
+        if (exitValue != 0) {
+          throw new Exception(output[0]);
+        }
+
+        return output[0];
+      }
+    });
+  }
+
+  /**
+   * Queues an arbitrary task that runs commands itself, so that it counts
+   * against the same process bound as {@link #submit(String[])}.
+   */
+  public static <T> Future<T> submit(Callable<T> task) {
+    return getCommandExecutor().submit(task);
+  }
+
+  /**
+   * Runs a streaming consumer of a command. These may block on whoever reads
+   * their output, so they use the unbounded stream pool and never starve the
+   * bounded command pool.
+   */
+  public static <T> Future<T> submitStreaming(Callable<T> task) {
+    return streamExecutor.submit(task);
+  }
+
+  /**
+   * Runs the command in the calling thread and hands its stdout to the
+   * handler line by line as it is produced, instead of buffering it. The
+   * command is killed when the handler returns false or the default timeout
+   * expires.
+   *
+   * @param message receives stderr when the exit value is non-zero
+   * @return the exit value of the command, or 0 if the handler stopped early
+   */
+  public static int stream(String[] command, LineHandler handler, String[] message) throws Exception {
+    return stream(command, handler, message, null);
+  }
+
+  public static int stream(String[] command, final LineHandler handler, String[] message, HookMetrics metrics) throws Exception {
+    return consume(command, new OutputConsumer() {
+      @Override
+      public boolean consume(InputStream ins) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(ins, ENCODING));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+          }
+          if (!handler.handle(line)) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }, message, metrics);
+  }
+
+  /**
+   * Like {@link #stream(String[], LineHandler, String[], HookMetrics)}, but
+   * hands over raw stdout bytes chunk by chunk through the caller's buffer,
+   * for content that is not line oriented or not text at all.
+   */
+  public static int stream(String[] command, final byte[] buffer, final ChunkHandler handler, String[] message, HookMetrics metrics) throws Exception {
+    return consume(command, new OutputConsumer() {
+      @Override
+      public boolean consume(InputStream ins) throws Exception {
+        int count;
+        while ((count = ins.read(buffer)) >= 0) {
+          if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+          }
+          if (count > 0 && !handler.handle(buffer, count)) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }, message, metrics);
+  }
+
+  @SuppressWarnings("try")
+  private static int consume(String[] command, OutputConsumer consumer, String[] message, HookMetrics metrics) throws Exception {
+    try (AdmissionControl.Permit permit = getProcessAdmission().acquire(metrics)) {
+      return spawn(command, consumer, message, metrics);
+    }
+  }
+
+  /**
+   * Reads stdout in the calling thread. A read blocked on the pipe does not
+   * notice interrupts, so the watchdog kills the process when the calling
+   * thread is interrupted, as well as on timeout.
+   */
+  private static int spawn(String[] command, OutputConsumer consumer, String[] message, HookMetrics metrics) throws Exception {
+    long start = System.nanoTime();
+    final Process process = new ProcessBuilder(command).start();
+    if (metrics != null) {
+      metrics.processSpawned();
+    }
+    final AtomicBoolean expired = new AtomicBoolean();
+    final Thread caller = Thread.currentThread();
+    final long deadline = start + TimeUnit.MILLISECONDS.toNanos(defaultTimeout);
+
+    ScheduledFuture<?> watchdog = watchdogExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        if (System.nanoTime() - deadline >= 0) {
+          expired.set(true);
+          process.destroy();
+        }
+        else if (caller.isInterrupted()) {
+          process.destroy();
+        }
+      }
+    }, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+
+    try {
+      process.getOutputStream().close();
+
+      FutureTask<String> stderrGlobber = new FutureTask<>(new StreamGobbler(process.getErrorStream()));
+      streamExecutor.execute(stderrGlobber);
+
+      try (InputStream ins = process.getInputStream()) {
+        if (!consumer.consume(ins)) {
+          return 0;
+        }
+      }
+      catch (IOException ex) {
+        if (!expired.get() && !Thread.currentThread().isInterrupted()) {
+          throw ex;
+        }
+      }
+
+      if (expired.get()) {
+        throw new TimeoutException("command timed out after " + defaultTimeout + "ms: " + Arrays.toString(command));
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException("command cancelled: " + Arrays.toString(command));
+      }
+
+      String stderrMessage = stderrGlobber.get();
+      int exitValue = process.waitFor();
+      message[0] = stderrMessage;
+
+      return exitValue;
+    }
+    finally {
+      watchdog.cancel(false);
+      process.destroy();
+
+      if (metrics != null) {
+        metrics.stop(getPhase(command), start);
+      }
+    }
+  }
+
+  /**
+   * Waits for a submitted command, rethrowing its failure as-is.
+   */
+  public static <T> T await(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    }
+    catch (ExecutionException ex) {
+      throw (ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : ex;
+    }
+  }
+
+  /**
+   * @return the metrics phase of a command, eg: command.svnlook.filesize
+   */
+  private static String getPhase(String[] command) {
+    String phase = "command." + HookUtils.getBasename(command[0]);
+
+    if (command.length > 1) {
+      phase += "." + command[1];
+    }
+
+    return phase;
+  }
+
+  public interface LineHandler {
+    /**
+     * @return false to stop reading and kill the command
+     */
+    boolean handle(String line) throws Exception;
+  }
+
+  public interface ChunkHandler {
+    /**
+     * @param buffer holds the chunk in its first length bytes, and is reused
+     * for the next chunk
+     * @return false to stop reading and kill the command
+     */
+    boolean handle(byte[] buffer, int length) throws Exception;
+  }
+
+  private interface OutputConsumer {
+    /**
+     * @return false if reading stopped early
+     */
+    boolean consume(InputStream ins) throws Exception;
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
   }
 }
@@ -0,0 +1,11 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * Rule evaluated once per commit.
+ */
+public interface CommitRule extends HookRule {
+  /**
+   * @throws RejectionException if the commit violates the rule
+   */
+  void check(HookContext context) throws Exception;
+}
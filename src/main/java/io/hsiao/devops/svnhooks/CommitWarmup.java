@@ -0,0 +1,225 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads what the pre-commit hook of a user is likely to need while the
+ * commit is still being uploaded: the {@link StartCommit} hook asks the
+ * {@link HookDaemon} to warm up, which then fills the connection pool and
+ * looks up the artifacts the user committed against lately, so that they
+ * are in the {@link ArtifactCache} by the time the pre-commit hook runs.
+ *
+ * The recent artifacts of a user are learnt from the commits the daemon
+ * serves, and at startup from the last 'warmup.history.days' of the
+ * {@link AuditLog}. Warm-ups are speculative: they are dropped rather than
+ * queued behind a backlog, and their failures only show in the metrics.
+ */
+public class CommitWarmup {
+  private static CommitWarmup instance;
+
+  private final Properties props;
+  private final int maxArtifacts;
+
+  // author -> artifact ids, most recent first
+  private final LinkedHashMap<String, LinkedList<String>> recent;
+  private final ThreadPoolExecutor executor;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  public CommitWarmup(Properties props) {
+    this.props = props;
+    this.maxArtifacts = HookUtils.getIntProperty(props, "warmup.max.artifacts", 5);
+
+    final int maxUsers = HookUtils.getIntProperty(props, "warmup.max.users", 10000);
+    recent = new LinkedHashMap<String, LinkedList<String>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, LinkedList<String>> eldest) {
+        return size() > maxUsers;
+      }
+    };
+
+    executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, HookUtils.getIntProperty(props, "warmup.queue.size", 100))), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "commit-warmup");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Returns the process-wide warm-up, see {@link HookDaemon}.
+   */
+  public static synchronized CommitWarmup getInstance(Properties props) {
+    if (instance == null) {
+      instance = new CommitWarmup(props);
+    }
+
+    return instance;
+  }
+
+  /**
+   * Remembers the artifacts a commit named, if it went through: a commit
+   * rejected for a missing or closed artifact must not have its ids warmed
+   * up for the next one.
+   *
+   * @param artifactIds comma separated, as in {@link HookMetrics#getArtifactId()}
+   * @param outcome as in {@link HookMetrics#getOutcome()}
+   */
+  public synchronized void record(String author, String artifactIds, String outcome) {
+    if (author == null || artifactIds == null || maxArtifacts <= 0) {
+      return;
+    }
+    if (!"accepted".equals(outcome) && !"degraded".equals(outcome)) {
+      return;
+    }
+
+    LinkedList<String> ids = recent.get(author);
+    if (ids == null) {
+      ids = new LinkedList<>();
+      recent.put(author, ids);
+    }
+
+    List<String> named = Arrays.asList(artifactIds.split(","));
+    for (int idx = named.size() - 1; idx >= 0; --idx) {
+      ids.remove(named.get(idx));
+      ids.addFirst(named.get(idx));
+    }
+    while (ids.size() > maxArtifacts) {
+      ids.removeLast();
+    }
+  }
+
+  public synchronized List<String> getRecent(String author) {
+    LinkedList<String> ids = recent.get(author);
+    return (ids == null) ? new ArrayList<String>() : new ArrayList<>(ids);
+  }
+
+  /**
+   * Starts warming up for a commit of the user, without waiting for it.
+   *
+   * @param snapshot the current configuration, whose database settings
+   * the commit will use
+   */
+  public void submit(final Properties snapshot, final String author) {
+    requests.incrementAndGet();
+
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          warm(snapshot, author);
+        }
+      });
+    }
+    catch (RejectedExecutionException ex) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  private void warm(Properties snapshot, String author) {
+    if (HookUtils.getProperty(snapshot, "jdbc.url", "").isEmpty()) {
+      return;
+    }
+
+    try {
+      ConnectionPool.getInstance(snapshot).fill();
+
+      List<String> artifactIds = getRecent(author);
+      if (!artifactIds.isEmpty()) {
+        lookups.incrementAndGet();
+        // answered from the cache if still fresh, else queried and cached
+        new ArtifactLookup(snapshot).lookup(artifactIds);
+      }
+    }
+    catch (Exception ex) {
+      failures.incrementAndGet();
+    }
+  }
+
+  /**
+   * Learns the recent artifacts of every author from the audit log, in the
+   * background.
+   */
+  public void seed() {
+    final String dir = HookUtils.getProperty(props, "audit.dir", "");
+    final int days = HookUtils.getIntProperty(props, "warmup.history.days", 7);
+
+    if (dir.isEmpty() || days <= 0) {
+      return;
+    }
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        String since = AuditLog.formatDay(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+
+        // oldest first, so that later commits end up in front
+        for (File file: AuditLog.listFiles(new File(dir))) {
+          if (AuditLog.getDay(file).compareTo(since) >= 0) {
+            seed(file);
+          }
+        }
+      }
+    });
+  }
+
+  private void seed(File file) {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 65536)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        AuditRecord record = AuditRecord.parse(line);
+        if (record != null) {
+          record(record.getAuthor(), record.getArtifactId(), record.getOutcome());
+        }
+      }
+    }
+    catch (IOException ex) {
+      // a damaged file, the records read so far are fine
+    }
+  }
+
+  public String getMetrics() {
+    int users;
+    synchronized (this) {
+      users = recent.size();
+    }
+
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("warmup");
+    sb.append(" users=" + users);
+    sb.append(" requests=" + requests.get());
+    sb.append(" dropped=" + dropped.get());
+    sb.append(" lookups=" + lookups.get());
+    sb.append(" failures=" + failures.get());
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,334 @@
+package io.hsiao.devops.svnhooks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool. Connections are validated on borrow and keep
+ * their prepared statements open, so that a warm hook process only pays for
+ * binding parameters and executing the query. Connecting is bounded by
+ * 'jdbc.login.timeout' and every statement by 'jdbc.query.timeout', so that
+ * a slow database cannot hold commits indefinitely.
+ */
+public class ConnectionPool {
+  private static final ConcurrentMap<String, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+
+  private final String jdbcUrl;
+  private final Properties jdbcProperties;
+
+  private final int minSize;
+  private final int maxSize;
+  private final long borrowTimeout;
+  private final int validationTimeout;
+  private final long idleTimeout;
+  private final int queryTimeout;
+
+  private final Semaphore permits;
+  private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicLong borrowed = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong invalidated = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  public ConnectionPool(Properties props) throws Exception {
+    jdbcUrl = HookUtils.getProperty(props, "jdbc.url");
+    jdbcProperties = getConnectionProperties(props);
+
+    minSize = HookUtils.getIntProperty(props, "jdbc.pool.min.size", 1);
+    maxSize = HookUtils.getIntProperty(props, "jdbc.pool.max.size", 8);
+    borrowTimeout = HookUtils.getIntProperty(props, "jdbc.pool.borrow.timeout", 10000);
+    validationTimeout = HookUtils.getIntProperty(props, "jdbc.pool.validation.timeout", 2);
+    idleTimeout = HookUtils.getIntProperty(props, "jdbc.pool.idle.timeout", 600000);
+    queryTimeout = HookUtils.getIntProperty(props, "jdbc.query.timeout", 10);
+
+    // honoured by the driver's own connect, and process-wide anyway
+    DriverManager.setLoginTimeout(HookUtils.getIntProperty(props, "jdbc.login.timeout", 5));
+
+    if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+      throw new Exception("invalid pool size: min=" + minSize + ", max=" + maxSize);
+    }
+
+    permits = new Semaphore(maxSize, true);
+  }
+
+  /**
+   * @return the credentials plus the driver specific settings of
+   * 'jdbc.connection.properties' ("name=value,name=value"), e.g. the socket
+   * timeouts of the Oracle driver
+   */
+  private static Properties getConnectionProperties(Properties props) throws Exception {
+    Properties info = new Properties();
+
+    info.setProperty("user", HookUtils.getProperty(props, "jdbc.username"));
+    info.setProperty("password", HookUtils.getProperty(props, "jdbc.password"));
+
+    for (String setting: HookUtils.getProperty(props, "jdbc.connection.properties", "").split(",")) {
+      if (setting.trim().isEmpty()) {
+        continue;
+      }
+
+      int idx = setting.indexOf('=');
+      if (idx <= 0) {
+        throw new Exception("invalid connection property '" + setting.trim() + "', expected name=value");
+      }
+      info.setProperty(setting.substring(0, idx).trim(), setting.substring(idx + 1).trim());
+    }
+
+    return info;
+  }
+
+  /**
+   * Returns the process-wide pool for the database configured in the given
+   * properties, creating (but not yet filling) it on first use.
+   */
+  public static ConnectionPool getInstance(Properties props) throws Exception {
+    String key = HookUtils.getProperty(props, "jdbc.url") + "|" + HookUtils.getProperty(props, "jdbc.username");
+
+    ConnectionPool pool = POOLS.get(key);
+    if (pool == null) {
+      ConnectionPool instance = new ConnectionPool(props);
+      pool = POOLS.putIfAbsent(key, instance);
+      if (pool == null) {
+        pool = instance;
+      }
+    }
+
+    return pool;
+  }
+
+  public static List<ConnectionPool> getInstances() {
+    return new ArrayList<>(POOLS.values());
+  }
+
+  /**
+   * Opens connections until the pool holds its configured minimum size.
+   */
+  public void fill() throws SQLException {
+    while (idle.size() + active.get() < minSize) {
+      idle.offerLast(new PooledConnection(DriverManager.getConnection(jdbcUrl, jdbcProperties)));
+      created.incrementAndGet();
+    }
+  }
+
+  public PooledConnection borrow() throws SQLException {
+    long start = System.nanoTime();
+
+    try {
+      if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+        timeouts.incrementAndGet();
+        throw new SQLException("timed out after " + borrowTimeout + "ms waiting for a database connection");
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("interrupted while waiting for a database connection", ex);
+    }
+
+    long waited = System.nanoTime() - start;
+    waitNanos.addAndGet(waited);
+    while (true) {
+      long max = maxWaitNanos.get();
+      if (waited <= max || maxWaitNanos.compareAndSet(max, waited)) {
+        break;
+      }
+    }
+
+    try {
+      PooledConnection conn = acquire();
+      active.incrementAndGet();
+      borrowed.incrementAndGet();
+      return conn;
+    }
+    catch (SQLException | RuntimeException ex) {
+      permits.release();
+      throw ex;
+    }
+  }
+
+  private PooledConnection acquire() throws SQLException {
+    PooledConnection conn;
+
+    while ((conn = idle.pollFirst()) != null) {
+      if (conn.validate()) {
+        return conn;
+      }
+      invalidated.incrementAndGet();
+      conn.discard();
+    }
+
+    conn = new PooledConnection(DriverManager.getConnection(jdbcUrl, jdbcProperties));
+    created.incrementAndGet();
+
+    return conn;
+  }
+
+  private void release(PooledConnection conn) {
+    active.decrementAndGet();
+
+    try {
+      if (conn.broken) {
+        invalidated.incrementAndGet();
+        conn.discard();
+      }
+      else {
+        conn.lastUsed = System.currentTimeMillis();
+        idle.offerFirst(conn);
+        evictIdle();
+      }
+    }
+    finally {
+      permits.release();
+    }
+  }
+
+  private void evictIdle() {
+    long deadline = System.currentTimeMillis() - idleTimeout;
+
+    // the most recently used connections sit at the head, so stale ones are at the tail
+    Iterator<PooledConnection> iterator = idle.descendingIterator();
+    while (iterator.hasNext() && idle.size() + active.get() > minSize) {
+      PooledConnection conn = iterator.next();
+      if (conn.lastUsed >= deadline) {
+        break;
+      }
+      if (idle.removeLastOccurrence(conn)) {
+        conn.discard();
+      }
+    }
+  }
+
+  public void close() {
+    PooledConnection conn;
+    while ((conn = idle.pollFirst()) != null) {
+      conn.discard();
+    }
+  }
+
+  public int getActiveCount() {
+    return active.get();
+  }
+
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  public int getWaitingCount() {
+    return permits.getQueueLength();
+  }
+
+  public String getMetrics() {
+    long count = borrowed.get();
+
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("pool[" + jdbcUrl + "]");
+    sb.append(" active=" + getActiveCount());
+    sb.append(" idle=" + getIdleCount());
+    sb.append(" waiting=" + getWaitingCount());
+    sb.append(" max=" + maxSize);
+    sb.append(" borrowed=" + count);
+    sb.append(" created=" + created.get());
+    sb.append(" invalidated=" + invalidated.get());
+    sb.append(" timeouts=" + timeouts.get());
+    sb.append(" avgWaitMs=" + (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / count)));
+    sb.append(" maxWaitMs=" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+
+    return sb.toString();
+  }
+
+  /**
+   * Pooled connection handle; closing it hands the connection back to the pool.
+   */
+  public class PooledConnection implements AutoCloseable {
+    private final Connection conn;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    private volatile long lastUsed = System.currentTimeMillis();
+    private boolean broken;
+
+    private PooledConnection(Connection conn) {
+      this.conn = conn;
+    }
+
+    /**
+     * Returns a statement prepared once per physical connection; callers must
+     * not close it, but must close the result sets they obtain from it. The
+     * statement times out after 'jdbc.query.timeout' seconds unless the
+     * caller sets its own timeout.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+      PreparedStatement pstmt = statements.get(sql);
+
+      if (pstmt == null) {
+        pstmt = conn.prepareStatement(sql);
+        pstmt.setQueryTimeout(queryTimeout);
+        statements.put(sql, pstmt);
+      }
+      else {
+        pstmt.clearParameters();
+      }
+
+      return pstmt;
+    }
+
+    /**
+     * Marks the underlying connection as unusable, e.g. after a SQL error, so
+     * that it is discarded instead of being returned to the pool.
+     */
+    public void invalidate() {
+      broken = true;
+    }
+
+    private boolean validate() {
+      try {
+        return !conn.isClosed() && conn.isValid(validationTimeout);
+      }
+      catch (SQLException ex) {
+        return false;
+      }
+    }
+
+    private void discard() {
+      for (PreparedStatement pstmt: statements.values()) {
+        try {
+          pstmt.close();
+        }
+        catch (SQLException ex) {
+          // ignore, the connection is going away
+        }
+      }
+      statements.clear();
+
+      try {
+        conn.close();
+      }
+      catch (SQLException ex) {
+        // ignore, the connection is going away
+      }
+    }
+
+    @Override
+    public void close() {
+      release(this);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Added, modified or replaced files must not be binaries (--forbid-binary)
+ * nor contain any of the --forbidden-patterns; added files must not exceed
+ * --file-size-limit either, which is measured while streaming rather than
+ * by {@link FileSizeRule}. Contents are streamed after the pass, and only if
+ * no cheaper rule rejected the commit.
+ */
+public class ContentRule implements PathRule {
+  @Override
+  public int getCost() {
+    return COST_IO + 1;
+  }
+
+  @Override
+  public PathCheck begin(HookContext context) throws Exception {
+    if (!context.getOptions().isContentCheck()) {
+      return null;
+    }
+
+    return new ContentCheck(context);
+  }
+
+  private static boolean hasContentChange(String type) {
+    return type.startsWith("A") || type.startsWith("U") || type.startsWith("R");
+  }
+
+  private static class ContentCheck implements PathCheck, Closeable {
+    private final HookContext context;
+    private final HookOptions options;
+    private final String limit;
+
+    // added files are the ones subject to the size limit
+    private final PathSpool addedFiles;
+    private final PathSpool changedFiles;
+
+    private final Map<String, String> reasons = new HashMap<>();
+    private boolean oversized;
+
+    private ContentCheck(HookContext context) {
+      this.context = context;
+      this.options = context.getOptions();
+      this.limit = options.getFileSizeLimit();
+
+      int capacity = HookUtils.getIntProperty(context.getProperties(), "svnlook.changed.buffer", 1024);
+      this.addedFiles = new PathSpool(capacity);
+      this.changedFiles = new PathSpool(capacity);
+    }
+
+    @Override
+    public boolean accept(ChangeRecord record) throws Exception {
+      if (!record.isDirectory() && hasContentChange(record.getType())) {
+        if (record.isAdded()) {
+          addedFiles.add(record.getPath());
+        }
+        else {
+          changedFiles.add(record.getPath());
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public List<String> finish() throws Exception {
+      List<String> violatedPaths = new ArrayList<>();
+
+      int workers = HookUtils.getIntProperty(context.getProperties(), "svnlook.workers", 4);
+      int bufferSize = HookUtils.getIntProperty(context.getProperties(), "content.buffer.size", 65536);
+
+      ContentScanner scanner = new ContentScanner(context.getSvnlook(), context.getRepoPath(), context.getTarget(), workers, bufferSize, options.isForbidBinary(), options.getPatterns(), (limit == null) ? -1 : HookUtils.getFileSizeLimit(limit), context.getMetrics());
+
+      scan(scanner, addedFiles, true, violatedPaths);
+      scan(scanner, changedFiles, false, violatedPaths);
+
+      return violatedPaths;
+    }
+
+    private void scan(ContentScanner scanner, PathSpool spool, boolean limited, List<String> violatedPaths) throws Exception {
+      List<String> paths;
+      // one rejected file is enough unless all are to be reported
+      while ((options.isReportAll() || violatedPaths.isEmpty()) && !(paths = spool.next()).isEmpty()) {
+        for (ContentScanner.Report report: scanner.scan(paths, limited, options.isReportAll())) {
+          violatedPaths.add(report.getPath());
+
+          if (!report.getPatterns().isEmpty()) {
+            reasons.put(report.getPath(), "contains " + report.getPatterns());
+          }
+          else if (report.isOversized()) {
+            reasons.put(report.getPath(), "exceeds the size limit");
+            oversized = true;
+          }
+          else {
+            reasons.put(report.getPath(), "binary (" + report.getBinaryType() + ")");
+          }
+        }
+      }
+    }
+
+    @Override
+    public String getMessage(List<String> paths) {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Below changes contain forbidden content, please check\n\n");
+      if (oversized) {
+        sb.append("Current allowed file size limit is: [").append(limit).append("]\n\n");
+      }
+      ReportWriter.appendPaths(sb, paths, reasons, context.getProperties());
+      sb.append("\n");
+      sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+      return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        addedFiles.close();
+      }
+      finally {
+        changedFiles.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package io.hsiao.devops.svnhooks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Streams the content of transaction files from 'svnlook cat' through a
+ * reusable per-thread buffer, measuring the size, sniffing binaries and
+ * matching forbidden byte patterns without ever holding a whole file. A
+ * bounded number of files is scanned concurrently; reading stops as soon as
+ * a file is rejected, and no further files are started after that. Files
+ * subject to a size limit are rejected as soon as they exceed it.
+ */
+public class ContentScanner {
+  // like git, a NUL byte among the first 8000 bytes means binary
+  private static final int BINARY_PROBE_LENGTH = 8000;
+  private static final int HEADER_LENGTH = 16;
+
+  private static final String[] SIGNATURE_NAMES = {
+    "zip", "gzip", "xz", "7z", "rar", "elf", "mach-o", "mach-o", "java class", "png", "jpeg", "gif", "pdf", "ms office"
+  };
+
+  private static final byte[][] SIGNATURES = {
+    {'P', 'K', 0x03, 0x04},
+    {0x1f, (byte) 0x8b},
+    {(byte) 0xfd, '7', 'z', 'X', 'Z', 0x00},
+    {'7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c},
+    {'R', 'a', 'r', '!', 0x1a, 0x07},
+    {0x7f, 'E', 'L', 'F'},
+    {(byte) 0xfe, (byte) 0xed, (byte) 0xfa, (byte) 0xce},
+    {(byte) 0xcf, (byte) 0xfa, (byte) 0xed, (byte) 0xfe},
+    {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe},
+    {(byte) 0x89, 'P', 'N', 'G'},
+    {(byte) 0xff, (byte) 0xd8, (byte) 0xff},
+    {'G', 'I', 'F', '8'},
+    {'%', 'P', 'D', 'F', '-'},
+    {(byte) 0xd0, (byte) 0xcf, 0x11, (byte) 0xe0, (byte) 0xa1, (byte) 0xb1, 0x1a, (byte) 0xe1}
+  };
+
+  private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+  private final String svnlook;
+  private final String repoPath;
+  private final String[] target;
+  private final int workers;
+  private final int bufferSize;
+  private final boolean forbidBinary;
+  private final String[] patterns;
+  private final BytePatternMatcher matcher;
+  private final long sizeLimit;
+  private final HookMetrics metrics;
+
+  public ContentScanner(String svnlook, String repoPath, String[] target, int workers, int bufferSize, boolean forbidBinary, String[] patterns, HookMetrics metrics) {
+    this(svnlook, repoPath, target, workers, bufferSize, forbidBinary, patterns, -1, metrics);
+  }
+
+  /**
+   * @param sizeLimit the size in bytes the paths passed as limited to
+   * {@link #scan(List, boolean, boolean)} must not exceed, negative for none
+   */
+  public ContentScanner(String svnlook, String repoPath, String[] target, int workers, int bufferSize, boolean forbidBinary, String[] patterns, long sizeLimit, HookMetrics metrics) {
+    this.svnlook = svnlook;
+    this.repoPath = repoPath;
+    this.target = target;
+    this.workers = Math.max(1, workers);
+    this.bufferSize = Math.max(1024, bufferSize);
+    this.forbidBinary = forbidBinary;
+    this.patterns = patterns.clone();
+    this.sizeLimit = sizeLimit;
+    this.metrics = metrics;
+
+    if (patterns.length == 0) {
+      matcher = null;
+    }
+    else {
+      List<byte[]> bytes = new ArrayList<>();
+      for (String pattern: patterns) {
+        bytes.add(pattern.getBytes(StandardCharsets.UTF_8));
+      }
+      matcher = new BytePatternMatcher(bytes);
+    }
+  }
+
+  /**
+   * @return the reports of the rejected files, empty if all files passed
+   */
+  public List<Report> scan(List<String> paths) throws Exception {
+    return scan(paths, false);
+  }
+
+  /**
+   * @param all true to scan every file rather than stopping at the first
+   * rejected one
+   */
+  public List<Report> scan(List<String> paths, boolean all) throws Exception {
+    return scan(paths, false, all);
+  }
+
+  /**
+   * @param limited true if the size limit applies to the paths
+   */
+  public List<Report> scan(List<String> paths, boolean limited, boolean all) throws Exception {
+    List<Report> rejected = new ArrayList<>();
+    Deque<Future<Report>> inflight = new ArrayDeque<>();
+
+    try {
+      Iterator<String> iterator = paths.iterator();
+
+      while ((all || rejected.isEmpty()) && (iterator.hasNext() || !inflight.isEmpty())) {
+        while (iterator.hasNext() && inflight.size() < workers) {
+          inflight.addLast(CommandRunner.submit(newTask(iterator.next(), limited)));
+        }
+
+        Report report = CommandRunner.await(inflight.removeFirst());
+        if (report.isRejected()) {
+          rejected.add(report);
+        }
+      }
+    }
+    finally {
+      for (Future<Report> future: inflight) {
+        future.cancel(true);
+      }
+    }
+
+    return rejected;
+  }
+
+  private Callable<Report> newTask(final String path, final boolean limited) {
+    return new Callable<Report>() {
+      @Override
+      public Report call() throws Exception {
+        return scan(path, limited);
+      }
+    };
+  }
+
+  private Report scan(String path, boolean limited) throws Exception {
+    final Report report = new Report(path, limited && sizeLimit >= 0);
+
+    byte[] buffer = BUFFERS.get();
+    if (buffer == null || buffer.length != bufferSize) {
+      buffer = new byte[bufferSize];
+      BUFFERS.set(buffer);
+    }
+
+    String[] output = new String[1];
+
+    int exitValue = CommandRunner.stream(new String[] {svnlook, "cat", repoPath, path, target[0], target[1]}, buffer, new CommandRunner.ChunkHandler() {
+      @Override
+      public boolean handle(byte[] buffer, int length) {
+        report.update(buffer, length);
+        return !report.isRejected();
+      }
+    }, output, metrics);
+
+    if (exitValue != 0) {
+      throw new Exception(output[0]);
+    }
+
+    report.finish();
+
+    return report;
+  }
+
+  /**
+   * What was learned about one file. When the file was rejected midway,
+   * the size only covers the part that was read.
+   */
+  public class Report {
+    private final String path;
+    private final boolean limited;
+    private final BytePatternMatcher.Scan scan;
+
+    private final byte[] header = new byte[HEADER_LENGTH];
+    private int headerLength;
+
+    private long size;
+    private boolean oversized;
+    private String binaryType;
+
+    private Report(String path, boolean limited) {
+      this.path = path;
+      this.limited = limited;
+      this.scan = (matcher == null) ? null : matcher.newScan();
+    }
+
+    private void update(byte[] buffer, int length) {
+      if (headerLength < HEADER_LENGTH) {
+        int count = Math.min(length, HEADER_LENGTH - headerLength);
+        System.arraycopy(buffer, 0, header, headerLength, count);
+        headerLength += count;
+
+        if (headerLength == HEADER_LENGTH) {
+          sniff();
+        }
+      }
+
+      if (binaryType == null && size < BINARY_PROBE_LENGTH) {
+        int end = (int) Math.min(length, BINARY_PROBE_LENGTH - size);
+        for (int idx = 0; idx < end; ++idx) {
+          if (buffer[idx] == 0) {
+            binaryType = "data";
+            break;
+          }
+        }
+      }
+
+      if (scan != null) {
+        scan.update(buffer, 0, length);
+      }
+
+      size += length;
+
+      if (limited && size > sizeLimit) {
+        oversized = true;
+      }
+    }
+
+    private void finish() {
+      if (headerLength < HEADER_LENGTH) {
+        sniff();
+      }
+    }
+
+    private void sniff() {
+      for (int idx = 0; idx < SIGNATURES.length && binaryType == null; ++idx) {
+        byte[] signature = SIGNATURES[idx];
+
+        if (headerLength >= signature.length && Arrays.equals(Arrays.copyOf(header, signature.length), signature)) {
+          binaryType = SIGNATURE_NAMES[idx];
+        }
+      }
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return true if the file exceeds the size limit
+     */
+    public boolean isOversized() {
+      return oversized;
+    }
+
+    /**
+     * @return the detected kind of binary, or null for text
+     */
+    public String getBinaryType() {
+      return binaryType;
+    }
+
+    /**
+     * @return the forbidden patterns found in the file
+     */
+    public List<String> getPatterns() {
+      List<String> found = new ArrayList<>();
+
+      long mask = (scan == null) ? 0 : scan.getFound();
+      for (int idx = 0; idx < patterns.length; ++idx) {
+        if ((mask & (1L << idx)) != 0) {
+          found.add(patterns[idx]);
+        }
+      }
+
+      return found;
+    }
+
+    public boolean isRejected() {
+      return oversized || (forbidBinary && binaryType != null) || (scan != null && scan.getFound() != 0);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Files under dbscript/ or demodata/ must sit in the folder of the artifact's
+ * 'Fixed in Release', or of any artifact's with several (disabled by
+ * --no-check-db).
+ */
+public class DbdataRule implements PathRule {
+  private static final long DBSCRIPT = 1L;
+  private static final long DEMODATA = 1L << 1;
+  private static final long SRC_MAIN_DBSCRIPT = 1L << 2;
+  private static final long DBSCRIPT_INIT = (1L << 3) | (1L << 4);
+  private static final int RELEASE_FOLDERS = 5;
+
+  // one matcher pattern per distinct release of the commit's artifacts
+  static final int MAX_RELEASES = SubstringMatcher.MAX_PATTERNS - RELEASE_FOLDERS;
+
+  @Override
+  public int getCost() {
+    return COST_ARTIFACT + 1;
+  }
+
+  @Override
+  public PathCheck begin(final HookContext context) throws Exception {
+    if (!context.getOptions().isDbdataCheck()) {
+      return null;
+    }
+
+    List<String> patterns = new ArrayList<>(Arrays.asList(
+      "/dbscript/",
+      "/demodata/",
+      "/src/main/dbscript/",
+      "/dbscript/initdb/",
+      "/dbscript/initdata/"
+    ));
+
+    Set<String> releases = new LinkedHashSet<>();
+    for (Artifact artifact: context.getArtifacts()) {
+      releases.add("/" + artifact.getFixedInRelease() + "/");
+    }
+    patterns.addAll(releases);
+
+    // one scan per path finds all folders the rule cares about
+    final SubstringMatcher matcher = new SubstringMatcher(patterns.toArray(new String[patterns.size()]));
+    final long releaseFolders = ((1L << releases.size()) - 1) << RELEASE_FOLDERS;
+
+    return new PathCheck() {
+      @Override
+      public boolean accept(ChangeRecord record) {
+        if (record.isDirectory()) {
+          return false;
+        }
+
+        long found = matcher.scan(record.getPath());
+
+        if ((found & (DBSCRIPT | DEMODATA)) == 0) {
+          return false;
+        }
+
+        if ((found & SRC_MAIN_DBSCRIPT) == 0 && (found & DBSCRIPT_INIT) != 0) {
+          return false;
+        }
+
+        return (found & releaseFolders) == 0;
+      }
+
+      @Override
+      public List<String> finish() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public String getMessage(List<String> paths) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Below changes are committing to the wrong db folder, please check\n\n");
+        ReportWriter.appendPaths(sb, paths, context.getProperties());
+        sb.append("\n");
+        sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+        return sb.toString();
+      }
+    };
+  }
+}
@@ -0,0 +1,80 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Collects the sizes of many transaction paths in one stage, keeping at most
+ * a bounded number of 'svnlook filesize' processes in flight per commit.
+ * svnlook has no listing that reports sizes, so one process per path is
+ * unavoidable here, but they no longer run strictly one after another.
+ */
+public class FileSizeCollector {
+  private final String svnlook;
+  private final String repoPath;
+  private final String[] target;
+  private final int workers;
+  private final HookMetrics metrics;
+  private final FsfsTransaction transaction;
+
+  public FileSizeCollector(String svnlook, String repoPath, String[] target, int workers) {
+    this(svnlook, repoPath, target, workers, null, null);
+  }
+
+  /**
+   * @param target the svnlook options selecting the transaction or
+   * revision, see {@link HookContext#getTarget()}
+   * @param transaction if not null, sizes it can read from the transaction
+   * files spare an svnlook process
+   */
+  public FileSizeCollector(String svnlook, String repoPath, String[] target, int workers, HookMetrics metrics, FsfsTransaction transaction) {
+    this.svnlook = svnlook;
+    this.repoPath = repoPath;
+    this.target = target;
+    this.workers = Math.max(1, workers);
+    this.metrics = metrics;
+    this.transaction = transaction;
+  }
+
+  /**
+   * @return a map from each of the given paths to its size in bytes
+   */
+  public Map<String, Long> collect(List<String> paths) throws Exception {
+    Map<String, Long> sizes = new HashMap<>();
+
+    Deque<String> pending = new ArrayDeque<>();
+    Deque<Future<String>> inflight = new ArrayDeque<>();
+
+    try {
+      for (String path: paths) {
+        Long size = (transaction == null) ? null : transaction.getFileSize(path);
+        if (size != null) {
+          sizes.put(path, size);
+          continue;
+        }
+
+        if (inflight.size() >= workers) {
+          sizes.put(pending.removeFirst(), Long.valueOf(CommandRunner.await(inflight.removeFirst()).trim()));
+        }
+
+        pending.addLast(path);
+        inflight.addLast(CommandRunner.submit(new String[] {svnlook, "filesize", repoPath, path, target[0], target[1]}, metrics));
+      }
+
+      while (!inflight.isEmpty()) {
+        sizes.put(pending.removeFirst(), Long.valueOf(CommandRunner.await(inflight.removeFirst()).trim()));
+      }
+    }
+    finally {
+      for (Future<String> future: inflight) {
+        future.cancel(true);
+      }
+    }
+
+    return sizes;
+  }
+}
@@ -0,0 +1,91 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Added files must not exceed --file-size-limit. Sizes are looked up in
+ * batches after the pass, and only if no cheaper rule rejected the commit.
+ * When contents are scanned anyway, {@link ContentRule} measures the sizes
+ * instead.
+ */
+public class FileSizeRule implements PathRule {
+  @Override
+  public int getCost() {
+    return COST_IO;
+  }
+
+  @Override
+  public PathCheck begin(HookContext context) throws Exception {
+    String limit = context.getOptions().getFileSizeLimit();
+    if (limit == null || context.getOptions().isContentCheck()) {
+      return null;
+    }
+
+    return new SizeCheck(context, limit, HookUtils.getFileSizeLimit(limit));
+  }
+
+  private static class SizeCheck implements PathCheck, Closeable {
+    private final HookContext context;
+    private final String limit;
+    private final long sizeLimit;
+    private final PathSpool addedFiles;
+
+    private SizeCheck(HookContext context, String limit, long sizeLimit) {
+      this.context = context;
+      this.limit = limit;
+      this.sizeLimit = sizeLimit;
+      this.addedFiles = new PathSpool(HookUtils.getIntProperty(context.getProperties(), "svnlook.changed.buffer", 1024));
+    }
+
+    @Override
+    public boolean accept(ChangeRecord record) throws Exception {
+      if (record.isAdded() && !record.isDirectory()) {
+        addedFiles.add(record.getPath());
+      }
+      return false;
+    }
+
+    @Override
+    public List<String> finish() throws Exception {
+      List<String> violatedPaths = new ArrayList<>();
+
+      int workers = HookUtils.getIntProperty(context.getProperties(), "svnlook.workers", 4);
+      FileSizeCollector collector = new FileSizeCollector(context.getSvnlook(), context.getRepoPath(), context.getTarget(), workers, context.getMetrics(), context.getTransaction());
+
+      List<String> paths;
+      while (!(paths = addedFiles.next()).isEmpty()) {
+        Map<String, Long> sizes = collector.collect(paths);
+
+        for (String path: paths) {
+          if (sizes.get(path) > sizeLimit) {
+            violatedPaths.add(path);
+          }
+        }
+      }
+
+      return violatedPaths;
+    }
+
+    @Override
+    public String getMessage(List<String> paths) {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Below changes exceeded maximum allowable size limit, please check\n\n");
+      sb.append("Current allowed file size limit is: [").append(limit).append("]\n\n");
+      ReportWriter.appendPaths(sb, paths, context.getProperties());
+      sb.append("\n");
+      sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+      return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+      addedFiles.close();
+    }
+  }
+}
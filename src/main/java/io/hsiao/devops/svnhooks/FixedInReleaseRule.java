@@ -0,0 +1,42 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * Each artifact's 'Fixed in Release' must be active and listed in the
+ * "[version:...]" tag of its package description.
+ */
+public class FixedInReleaseRule implements CommitRule {
+  @Override
+  public int getCost() {
+    return COST_ARTIFACT;
+  }
+
+  @Override
+  public void check(HookContext context) throws Exception {
+    for (Artifact artifact: context.getArtifacts()) {
+      check(context, artifact);
+    }
+  }
+
+  private void check(HookContext context, Artifact artifact) throws Exception {
+    String fixedInRelease = artifact.getFixedInRelease();
+
+    if (!artifact.getFixedInReleaseStatus().equalsIgnoreCase("active")) {
+      throw new RejectionException("Release version '" + fixedInRelease + "'" + context.describe(artifact) + " is not in 'active' state, please contact CM for assistance");
+    }
+
+    PackageDescription description = context.getPackage(artifact);
+    if (description.getVersions() == null) {
+      throw new Exception("invalid package description: release version missing");
+    }
+
+    if (!description.hasVersion(fixedInRelease)) {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Release version '" + fixedInRelease + "'" + context.describe(artifact) + " is not allowed for code check-in\n\n");
+      sb.append("Current allowed versions are: " + description.getVersions() + "\n\n");
+      sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+      throw new RejectionException(sb.toString());
+    }
+  }
+}
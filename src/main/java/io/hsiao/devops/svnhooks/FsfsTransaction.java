@@ -0,0 +1,374 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads a pending FSFS transaction straight from db/transactions/<txn>.txn
+ * instead of forking svnlook: the revision properties come from 'props' and
+ * the change list from 'changes', folded the way FSFS folds them. Anything
+ * this reader does not fully understand makes {@link #open(String, String)}
+ * return null, so the caller falls back to svnlook.
+ */
+public class FsfsTransaction {
+  // FSFS formats 1 (svn 1.1) through 8 (svn 1.10+) share the transaction layout read here
+  private static final int MAX_FORMAT = 8;
+
+  private static final String ACTION_ADD = "add";
+  private static final String ACTION_DELETE = "delete";
+  private static final String ACTION_REPLACE = "replace";
+  private static final String ACTION_MODIFY = "modify";
+  private static final String ACTION_RESET = "reset";
+
+  private final File txnDir;
+  private final Map<String, String> props;
+  private final TreeMap<String, Change> changes;
+
+  private FsfsTransaction(File txnDir, Map<String, String> props, TreeMap<String, Change> changes) {
+    this.txnDir = txnDir;
+    this.props = props;
+    this.changes = changes;
+  }
+
+  /**
+   * @return the transaction, or null if the repository is not FSFS, its
+   * format is unknown, or the transaction files could not be understood
+   */
+  public static FsfsTransaction open(String repoPath, String txnName) {
+    File dbDir = new File(repoPath, "db");
+
+    try {
+      if (!"fsfs".equals(readFirstLine(new File(dbDir, "fs-type")))) {
+        return null;
+      }
+
+      int format = Integer.parseInt(readFirstLine(new File(dbDir, "format")));
+      if (format < 1 || format > MAX_FORMAT) {
+        return null;
+      }
+
+      File txnDir = new File(new File(dbDir, "transactions"), txnName + ".txn");
+
+      Map<String, String> props = readHash(new File(txnDir, "props"));
+      TreeMap<String, Change> changes = readChanges(new File(txnDir, "changes"));
+
+      if (props == null || changes == null) {
+        return null;
+      }
+
+      return new FsfsTransaction(txnDir, props, changes);
+    }
+    catch (IOException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  public String getProperty(String name) {
+    return props.get(name);
+  }
+
+  public String getAuthor() {
+    return props.get("svn:author");
+  }
+
+  public String getMessage() {
+    return props.get("svn:log");
+  }
+
+  /**
+   * @return the change list in 'svnlook changed' form, sorted by path
+   */
+  public List<ChangeRecord> getChanges() {
+    List<ChangeRecord> records = new ArrayList<>(changes.size());
+
+    for (Map.Entry<String, Change> entry: changes.entrySet()) {
+      Change change = entry.getValue();
+      String path = entry.getKey().substring(1);
+
+      records.add(new ChangeRecord(change.getType().intern(), change.directory ? path + "/" : path));
+    }
+
+    return records;
+  }
+
+  /**
+   * Reads the size of a file of this transaction from its node revision.
+   *
+   * @param path the path as found in {@link #getChanges()}
+   * @return the size in bytes, or null if it has to be asked from svnlook
+   */
+  public Long getFileSize(String path) {
+    Change change = changes.get("/" + path);
+    if (change == null || change.directory || change.nodeRevId == null) {
+      return null;
+    }
+
+    // node revision ids of a transaction look like <node-id>.<copy-id>.t<txn-id>
+    String[] id = change.nodeRevId.split("\\.");
+    if (id.length != 3 || !id[2].startsWith("t")) {
+      return null;
+    }
+
+    File nodeRev = new File(txnDir, "node." + id[0] + "." + id[1]);
+
+    try (BufferedReader reader = Files.newBufferedReader(nodeRev.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null && !line.isEmpty()) {
+        if (!line.startsWith("text: ")) {
+          continue;
+        }
+
+        // text: <rev> <offset|item> <size> <expanded-size> <md5> ...
+        String[] rep = line.substring(6).split(" ");
+        long size = Long.parseLong(rep[2]);
+        long expandedSize = Long.parseLong(rep[3]);
+
+        if (expandedSize == 0 && size != 0) {
+          // legacy representation, the fulltext length is not recorded
+          return null;
+        }
+
+        return expandedSize;
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      return null;
+    }
+
+    return null;
+  }
+
+  private static String readFirstLine(File file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line = reader.readLine();
+      return (line == null) ? "" : line.trim();
+    }
+  }
+
+  /**
+   * Parses a hash dump ("K len / key / V len / value ... END"); lengths are
+   * in bytes, so the file is read as bytes and decoded per entry.
+   */
+  private static Map<String, String> readHash(File file) throws IOException {
+    Map<String, String> hash = new HashMap<>();
+
+    try (InputStream ins = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+      String line;
+      while ((line = readLine(ins)) != null) {
+        if (line.equals("END")) {
+          return hash;
+        }
+
+        if (line.startsWith("K ")) {
+          String key = readEntry(ins, Integer.parseInt(line.substring(2)));
+
+          line = readLine(ins);
+          if (line == null || !line.startsWith("V ")) {
+            return null;
+          }
+
+          hash.put(key, readEntry(ins, Integer.parseInt(line.substring(2))));
+        }
+        else if (line.startsWith("D ")) {
+          hash.remove(readEntry(ins, Integer.parseInt(line.substring(2))));
+        }
+        else {
+          return null;
+        }
+      }
+    }
+
+    // no END marker, the file is incomplete
+    return null;
+  }
+
+  private static String readEntry(InputStream ins, int length) throws IOException {
+    byte[] bytes = new byte[length];
+
+    int offset = 0;
+    while (offset < length) {
+      int count = ins.read(bytes, offset, length - offset);
+      if (count < 0) {
+        throw new IOException("unexpected end of hash dump");
+      }
+      offset += count;
+    }
+
+    if (ins.read() != '\n') {
+      throw new IOException("malformed hash dump entry");
+    }
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String readLine(InputStream ins) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+
+    int ch;
+    while ((ch = ins.read()) != '\n') {
+      if (ch < 0) {
+        return (bytes.size() == 0) ? null : bytes.toString("UTF-8");
+      }
+      bytes.write(ch);
+    }
+
+    return bytes.toString("UTF-8");
+  }
+
+  /**
+   * Parses the change entries, two lines each:
+   *
+   * <pre>
+   * &lt;node-rev-id&gt; &lt;action&gt;[-&lt;kind&gt;] &lt;text-mod&gt; &lt;prop-mod&gt; [&lt;mergeinfo-mod&gt;] &lt;/path&gt;
+   * [&lt;copyfrom-rev&gt; &lt;copyfrom-path&gt;]
+   * </pre>
+   *
+   * A path may appear many times, the entries are folded into one change.
+   *
+   * @return the folded changes, or null if an entry lacks the node kind
+   */
+  private static TreeMap<String, Change> readChanges(File file) throws IOException {
+    TreeMap<String, Change> changes = new TreeMap<>();
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        // the copyfrom line, which is empty when there is no copy source
+        reader.readLine();
+
+        int pathStart = line.indexOf(" /");
+        if (pathStart < 0) {
+          throw new IOException("malformed change entry: " + line);
+        }
+
+        String path = line.substring(pathStart + 1);
+        String[] fields = line.substring(0, pathStart).split(" ");
+        if (fields.length < 4) {
+          throw new IOException("malformed change entry: " + line);
+        }
+
+        String action = fields[1];
+        Boolean directory = null;
+
+        int kindStart = action.indexOf('-');
+        if (kindStart >= 0) {
+          String kind = action.substring(kindStart + 1);
+          action = action.substring(0, kindStart);
+
+          if (kind.equals("dir")) {
+            directory = Boolean.TRUE;
+          }
+          else if (kind.equals("file")) {
+            directory = Boolean.FALSE;
+          }
+        }
+
+        if (directory == null && !action.equals(ACTION_RESET)) {
+          // older formats don't record the node kind, which svnlook output needs
+          return null;
+        }
+
+        fold(changes, new Change(fields[0], action, directory != null && directory, Boolean.parseBoolean(fields[2]), Boolean.parseBoolean(fields[3])), path);
+      }
+    }
+
+    return changes;
+  }
+
+  private static void fold(TreeMap<String, Change> changes, Change change, String path) throws IOException {
+    Change previous = changes.get(path);
+
+    if (previous == null) {
+      if (!change.action.equals(ACTION_RESET)) {
+        changes.put(path, change);
+      }
+    }
+    else if (change.action.equals(ACTION_RESET)) {
+      changes.remove(path);
+    }
+    else if (change.action.equals(ACTION_DELETE)) {
+      if (previous.action.equals(ACTION_ADD)) {
+        // added and deleted within the transaction, nothing happened
+        changes.remove(path);
+      }
+      else {
+        changes.put(path, new Change(null, ACTION_DELETE, previous.directory, false, false));
+      }
+    }
+    else if (change.action.equals(ACTION_ADD) || change.action.equals(ACTION_REPLACE)) {
+      // an add can only follow a delete, which makes it a replace
+      changes.put(path, new Change(change.nodeRevId, ACTION_REPLACE, change.directory, change.textMod, change.propMod));
+    }
+    else if (change.action.equals(ACTION_MODIFY)) {
+      changes.put(path, new Change(change.nodeRevId, previous.action, previous.directory, previous.textMod || change.textMod, previous.propMod || change.propMod));
+    }
+    else {
+      throw new IOException("unknown change action: " + change.action);
+    }
+
+    if (change.action.equals(ACTION_DELETE) || change.action.equals(ACTION_REPLACE)) {
+      // whatever happened below a deleted or replaced directory is gone with it
+      String prefix = path.equals("/") ? "/" : path + "/";
+
+      Iterator<String> iterator = changes.tailMap(prefix, true).keySet().iterator();
+      while (iterator.hasNext()) {
+        String child = iterator.next();
+        if (!child.startsWith(prefix)) {
+          break;
+        }
+        if (!child.equals(path)) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private static class Change {
+    private final String nodeRevId;
+    private final String action;
+    private final boolean directory;
+    private final boolean textMod;
+    private final boolean propMod;
+
+    private Change(String nodeRevId, String action, boolean directory, boolean textMod, boolean propMod) {
+      this.nodeRevId = nodeRevId;
+      this.action = action;
+      this.directory = directory;
+      this.textMod = textMod;
+      this.propMod = propMod;
+    }
+
+    /**
+     * @return the status columns of 'svnlook changed', eg: "A", "_U", "UU"
+     */
+    private String getType() {
+      switch (action) {
+        case ACTION_ADD:
+          return "A";
+        case ACTION_DELETE:
+          return "D";
+        case ACTION_REPLACE:
+          return "R";
+        default:
+          return (textMod ? "U" : "_") + (propMod ? "U" : "");
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Thin entry point that forwards the hook arguments to a running
+ * {@link HookDaemon}, falling back to an in-process {@link PreCommitHook}
+ * whenever the daemon cannot be reached or does not answer within
+ * 'daemon.read.timeout'.
+ */
+public class HookClient {
+  public static final String DEFAULT_HOST = "127.0.0.1";
+  public static final int DEFAULT_PORT = 9527;
+
+  // well above a slow commit, which would otherwise be checked twice
+  public static final int DEFAULT_READ_TIMEOUT = 120000;
+
+  public static int forward(Properties props, int command, String[] args, String[] message) throws IOException {
+    String host = HookUtils.getProperty(props, "daemon.host", DEFAULT_HOST);
+    int port = HookUtils.getIntProperty(props, "daemon.port", DEFAULT_PORT);
+
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(host, port), HookUtils.getIntProperty(props, "daemon.connect.timeout", 500));
+      socket.setSoTimeout(HookUtils.getIntProperty(props, "daemon.read.timeout", DEFAULT_READ_TIMEOUT));
+
+      DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      HookProtocol.writeRequest(dos, command, args);
+
+      DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      return HookProtocol.readResponse(dis, message);
+    }
+  }
+
+  private static void stats(Properties props) {
+    String[] message = new String[1];
+
+    try {
+      int exitValue = forward(props, HookProtocol.COMMAND_STATS, new String[0], message);
+      System.out.print(message[0]);
+      System.exit(exitValue);
+    }
+    catch (IOException ex) {
+      HookUtils.print(System.err, null, "hook daemon is not reachable", ex);
+      System.exit(1);
+    }
+  }
+
+  public static void main(String[] args) {
+    Properties props = new Properties();
+    try {
+      props = HookConfig.load().getProperties();
+    }
+    catch (Exception ex) {
+      // fall through with the defaults, the in-process hook will report it
+    }
+
+    if (args.length == 1 && args[0].equals("--stats")) {
+      stats(props);
+      return;
+    }
+
+    String[] message = new String[1];
+    int exitValue;
+    try {
+      exitValue = forward(props, HookProtocol.COMMAND_RUN, args, message);
+    }
+    catch (IOException ex) {
+      new PreCommitHook(args).run();
+      return;
+    }
+
+    System.err.print(message[0]);
+    System.exit(exitValue);
+  }
+}
@@ -0,0 +1,173 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Immutable configuration snapshot: the hook.properties of the classpath,
+ * overlaid by an optional external hook.properties, plus the per-repository
+ * arguments of the optional 'repositories.file', e.g.
+ *
+ * <pre>
+ * default.args=--superusers=admin --file-size-limit=20M
+ * project-x.args=--superusers=admin,alice --forbidden-suffixes=jar,zip
+ * </pre>
+ *
+ * Repositories are keyed by the basename of their path. Arguments given to
+ * the hook itself follow the configured ones, and so take precedence.
+ */
+public class HookConfig {
+  /**
+   * System property naming the external hook.properties.
+   */
+  public static final String CONFIG_PROPERTY = "hook.config";
+
+  private static final String DEFAULT_REPOSITORY = "default";
+
+  private final Properties props;
+  private final Properties repositories;
+  private final List<File> files;
+
+  private HookConfig(Properties props, Properties repositories, List<File> files) {
+    this.props = props;
+    this.repositories = repositories;
+    this.files = Collections.unmodifiableList(files);
+  }
+
+  /**
+   * @param configFile the external hook.properties, may be null or empty
+   */
+  public static HookConfig load(String configFile) throws Exception {
+    Properties props = HookUtils.loadProperties(HookConfig.class, PreCommitHook.PROPERTY_FILE_NAME);
+    Properties repositories = new Properties();
+    List<File> files = new ArrayList<>();
+
+    if (configFile != null && !configFile.trim().isEmpty()) {
+      File file = new File(configFile.trim()).getAbsoluteFile();
+      props.putAll(loadFile(file));
+      files.add(file);
+    }
+
+    String repositoriesFile = HookUtils.getProperty(props, "repositories.file", "");
+    if (!repositoriesFile.isEmpty()) {
+      File file = new File(repositoriesFile).getAbsoluteFile();
+      repositories = loadFile(file);
+      files.add(file);
+    }
+
+    return new HookConfig(props, repositories, files);
+  }
+
+  /**
+   * @return the configuration named by the {@link #CONFIG_PROPERTY} system
+   * property, or the classpath one if it is not set
+   */
+  public static HookConfig load() throws Exception {
+    return load(System.getProperty(CONFIG_PROPERTY));
+  }
+
+  private static Properties loadFile(File file) throws Exception {
+    Properties props = new Properties();
+
+    try (InputStream ins = Files.newInputStream(file.toPath())) {
+      props.load(ins);
+    }
+
+    return props;
+  }
+
+  public Properties getProperties() {
+    return props;
+  }
+
+  /**
+   * @return the files this snapshot was loaded from, besides the classpath
+   */
+  public List<File> getFiles() {
+    return files;
+  }
+
+  /**
+   * Checks the configured arguments of every repository, so that a long
+   * running process refuses a bad configuration up front rather than fail
+   * each commit of the repository.
+   */
+  public void validate() throws Exception {
+    for (String name: repositories.stringPropertyNames()) {
+      if (name.endsWith(".args")) {
+        try {
+          new HookOptions(split(repositories.getProperty(name))).validate();
+        }
+        catch (Exception ex) {
+          throw new Exception("bad '" + name + "' in repositories.file: " + ex.getMessage(), ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param args the hook arguments: repository path, transaction name and
+   * any optional arguments
+   * @return the hook arguments with the configured ones of the repository
+   * inserted in front of the optional arguments
+   */
+  public String[] getArguments(String[] args) {
+    if (args.length < 2) {
+      return args;
+    }
+
+    String configured = repositories.getProperty(HookUtils.getBasename(args[0]) + ".args");
+    if (configured == null) {
+      configured = repositories.getProperty(DEFAULT_REPOSITORY + ".args", "");
+    }
+
+    List<String> arguments = new ArrayList<>();
+    arguments.add(args[0]);
+    arguments.add(args[1]);
+    arguments.addAll(split(configured));
+    arguments.addAll(Arrays.asList(args).subList(2, args.length));
+
+    return arguments.toArray(new String[arguments.size()]);
+  }
+
+  /**
+   * Splits on whitespace, except within double quotes.
+   */
+  private static List<String> split(String value) {
+    List<String> tokens = new ArrayList<>();
+    StringBuilder token = new StringBuilder();
+
+    boolean quoted = false;
+    boolean pending = false;
+
+    for (char ch: value.toCharArray()) {
+      if (ch == '"') {
+        quoted = !quoted;
+        pending = true;
+      }
+      else if (!quoted && Character.isWhitespace(ch)) {
+        if (pending) {
+          tokens.add(token.toString());
+          token.setLength(0);
+          pending = false;
+        }
+      }
+      else {
+        token.append(ch);
+        pending = true;
+      }
+    }
+
+    if (pending) {
+      tokens.add(token.toString());
+    }
+
+    return tokens;
+  }
+}
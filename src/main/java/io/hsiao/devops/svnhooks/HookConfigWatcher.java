@@ -0,0 +1,175 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the current {@link HookConfig} of a long-running process, reloading
+ * it whenever one of its files changes. Snapshots are swapped atomically, so
+ * a commit that picked up a snapshot sees it unchanged until it is done; a
+ * snapshot that fails to load is reported and the previous one kept.
+ *
+ * The repository arguments and the properties read per commit follow a
+ * reload; the settings of the process-wide components do not, and changes
+ * to them are reported as needing a restart.
+ */
+public class HookConfigWatcher implements AutoCloseable {
+  // editors write files in several steps, let them settle before reloading
+  private static final long SETTLE_MILLIS = 200;
+
+  // read once by the process-wide components (daemon socket, cache, breaker,
+  // admission, command pool, audit log, snapshot refresher, warm-up), so a
+  // reload leaves them as they were; see hook.properties
+  private static final String[] RESTART_KEYS = {"daemon.", "cache.", "breaker.failure.threshold", "breaker.open.duration", "breaker.file", "admission.", "command.", "audit.", "snapshot.file", "snapshot.refresh.interval", "snapshot.query.timeout", "snapshot.artifact.days", "warmup."};
+
+  // the connection pool is per url and user, so these only need a restart
+  // if neither changes along with them
+  private static final String[] POOL_KEYS = {"jdbc.password", "jdbc.connection.properties", "jdbc.login.timeout", "jdbc.query.timeout", "jdbc.pool."};
+
+  private final String configFile;
+  private final AtomicReference<HookConfig> current = new AtomicReference<>();
+  private final WatchService watchService;
+  private final Set<Path> directories = new HashSet<>();
+  private final Thread thread;
+
+  public HookConfigWatcher(String configFile) throws Exception {
+    this.configFile = configFile;
+    current.set(HookConfig.load(configFile));
+    current.get().validate();
+
+    watchService = FileSystems.getDefault().newWatchService();
+    register(current.get());
+
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        watch();
+      }
+    }, "config-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public HookConfig get() {
+    return current.get();
+  }
+
+  private synchronized void register(HookConfig config) throws IOException {
+    for (File file: config.getFiles()) {
+      Path directory = file.toPath().getParent();
+      if (directories.add(directory)) {
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      }
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+
+        boolean changed = false;
+        do {
+          for (WatchEvent<?> event: key.pollEvents()) {
+            if (event.context() instanceof Path) {
+              changed |= isConfigFile(((Path) key.watchable()).resolve((Path) event.context()));
+            }
+          }
+          key.reset();
+        } while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+        if (changed) {
+          reload();
+        }
+      }
+    }
+    catch (InterruptedException | ClosedWatchServiceException ex) {
+      // closed
+    }
+  }
+
+  private boolean isConfigFile(Path path) {
+    for (File file: current.get().getFiles()) {
+      if (file.toPath().equals(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Loads a fresh snapshot and makes it current.
+   */
+  public synchronized void reload() {
+    try {
+      HookConfig config = HookConfig.load(configFile);
+      config.validate();
+      register(config);
+      HookConfig previous = current.getAndSet(config);
+
+      System.err.println("configuration reloaded from " + config.getFiles());
+
+      List<String> ignored = getRestartKeys(previous.getProperties(), config.getProperties());
+      if (!ignored.isEmpty()) {
+        System.err.println("changes to " + ignored + " take effect after a restart");
+      }
+    }
+    catch (Exception ex) {
+      HookUtils.print(System.err, null, "failed to reload the configuration, keeping the previous one", ex);
+    }
+  }
+
+  /**
+   * @return the changed keys that a reload does not apply
+   */
+  static List<String> getRestartKeys(Properties before, Properties after) {
+    Set<String> names = new TreeSet<>(before.stringPropertyNames());
+    names.addAll(after.stringPropertyNames());
+
+    boolean samePool = isSame(before, after, "jdbc.url") && isSame(before, after, "jdbc.username");
+
+    List<String> keys = new ArrayList<>();
+    for (String name: names) {
+      if (!isSame(before, after, name) && (startsWithAny(name, RESTART_KEYS) || (samePool && startsWithAny(name, POOL_KEYS)))) {
+        keys.add(name);
+      }
+    }
+
+    return keys;
+  }
+
+  private static boolean isSame(Properties before, Properties after, String name) {
+    String value = before.getProperty(name);
+    return (value == null) ? after.getProperty(name) == null : value.equals(after.getProperty(name));
+  }
+
+  private static boolean startsWithAny(String name, String[] prefixes) {
+    for (String prefix: prefixes) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+}
@@ -0,0 +1,328 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Everything the rules may look at for one commit. Artifact data is fetched
+ * lazily on first access, so rules that never need it never pay for the
+ * database lookup, or in the background once {@link #prefetchArtifact()}
+ * was called.
+ */
+public class HookContext {
+  private static final Pattern ARTIFACT_IDS_PATTERN = Pattern.compile("\\A(?:\\s*\\[\\s*artf\\d+(?:\\s*,\\s*artf\\d+)*\\s*\\])+");
+  private static final Pattern ARTIFACT_ID_PATTERN = Pattern.compile("artf\\d+");
+
+  private final Properties props;
+  private final String svnlook;
+  private final String repoPath;
+  private final String txnName;
+  private final String author;
+  private final String message;
+  private final HookOptions options;
+  private final HookMetrics metrics;
+  private final FsfsTransaction transaction;
+
+  private List<String> artifactIds;
+  private List<Artifact> artifacts;
+
+  private ArtifactLookup lookup;
+  private Future<List<Artifact>> lookupTask;
+  private ArtifactUnavailableException unavailable;
+
+  public HookContext(Properties props, String svnlook, String repoPath, String txnName, String author, String message, HookOptions options) {
+    this(props, svnlook, repoPath, txnName, author, message, options, new HookMetrics(), null);
+  }
+
+  public HookContext(Properties props, String svnlook, String repoPath, String txnName, String author, String message, HookOptions options, HookMetrics metrics, FsfsTransaction transaction) {
+    this.props = props;
+    this.svnlook = svnlook;
+    this.repoPath = repoPath;
+    this.txnName = txnName;
+    this.author = author;
+    this.message = message;
+    this.options = options;
+    this.metrics = metrics;
+    this.transaction = transaction;
+  }
+
+  public Properties getProperties() {
+    return props;
+  }
+
+  public String getSvnlook() {
+    return svnlook;
+  }
+
+  public String getRepoPath() {
+    return repoPath;
+  }
+
+  public String getTxnName() {
+    return txnName;
+  }
+
+  /**
+   * @return the svnlook options selecting the transaction, or the committed
+   * revision with --revision
+   */
+  public String[] getTarget() {
+    return getTarget(options, txnName);
+  }
+
+  public static String[] getTarget(HookOptions options, String txnName) {
+    return new String[] {options.isRevision() ? "--revision" : "--transaction", txnName};
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public HookOptions getOptions() {
+    return options;
+  }
+
+  public HookMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the directly read transaction, or null when svnlook is used
+   */
+  public FsfsTransaction getTransaction() {
+    return transaction;
+  }
+
+  /**
+   * @return the first artifact id of the commit message
+   */
+  public String getArtifactId() throws RejectionException {
+    return getArtifactIds().get(0);
+  }
+
+  /**
+   * @return the artifact ids at the start of the commit message, e.g.
+   * "[artf1][artf2]" or "[artf1, artf2]", without duplicates
+   */
+  public List<String> getArtifactIds() throws RejectionException {
+    if (artifactIds == null) {
+      Matcher matcher = ARTIFACT_IDS_PATTERN.matcher(message);
+
+      if (!matcher.find()) {
+        throw new RejectionException("Please provide artifact id in the commit message (eg: [artf12306], or [artf12306][artf12307] for several)");
+      }
+
+      Set<String> ids = new LinkedHashSet<>();
+      Matcher id = ARTIFACT_ID_PATTERN.matcher(matcher.group());
+      while (id.find()) {
+        ids.add(id.group());
+      }
+
+      // DbdataRule matches the release folders of all artifacts in one scan
+      int maxIds = Math.min(HookUtils.getIntProperty(props, "artifact.max.ids", 20), DbdataRule.MAX_RELEASES);
+      if (ids.size() > maxIds) {
+        throw new RejectionException("Please provide at most " + maxIds + " artifact ids in the commit message, or contact CM for assistance");
+      }
+
+      artifactIds = Collections.unmodifiableList(new ArrayList<>(ids));
+
+      StringBuilder sb = new StringBuilder();
+      for (String artifactId: artifactIds) {
+        sb.append(sb.length() == 0 ? "" : ",").append(artifactId);
+      }
+      metrics.setArtifactId(sb.toString());
+    }
+
+    return artifactIds;
+  }
+
+  /**
+   * Starts the artifact lookup in the background, so that local checks can
+   * run meanwhile. Does nothing without an artifact id, as
+   * {@link #getArtifactIds()} rejects the commit anyway.
+   */
+  public void prefetchArtifact() {
+    if (lookupTask != null || artifacts != null) {
+      return;
+    }
+
+    List<String> ids;
+    try {
+      ids = getArtifactIds();
+    }
+    catch (RejectionException ex) {
+      return;
+    }
+
+    lookup = new ArtifactLookup(props, metrics);
+    lookupTask = lookup.submit(ids);
+  }
+
+  /**
+   * @return false while a prefetched lookup is still in progress, i.e.
+   * while {@link #getArtifacts()} would block
+   */
+  public boolean isArtifactReady() {
+    return lookupTask == null || lookupTask.isDone();
+  }
+
+  /**
+   * Abandons a prefetched lookup that is still in progress, once the commit
+   * is rejected for other reasons.
+   */
+  public void cancelArtifact() {
+    if (lookupTask != null && !lookupTask.isDone()) {
+      lookup.cancel();
+      lookupTask.cancel(true);
+    }
+  }
+
+  /**
+   * @return the first artifact, see {@link #getArtifacts()}
+   */
+  public Artifact getArtifact() throws Exception {
+    return getArtifacts().get(0);
+  }
+
+  /**
+   * @return the artifacts of the commit message, all found in TeamForge
+   * @throws ArtifactUnavailableException if TeamForge is unavailable, there
+   * is no stale data and the 'allow' policy lets the commit go without the
+   * artifact checks; other policies reject it instead
+   */
+  public List<Artifact> getArtifacts() throws Exception {
+    if (artifacts == null) {
+      List<Artifact> found = null;
+
+      if (unavailable == null) {
+        long start = metrics.start();
+        try {
+          found = (lookupTask != null) ? CommandRunner.await(lookupTask) : new ArtifactLookup(props, metrics).lookup(getArtifactIds());
+        }
+        catch (ArtifactUnavailableException ex) {
+          // remembered, so that the next rule does not wait for it again
+          unavailable = ex;
+        }
+        finally {
+          metrics.stop("artifact.lookup", start);
+        }
+      }
+
+      if (unavailable != null) {
+        if (ArtifactLookup.POLICY_ALLOW.equals(ArtifactLookup.getOpenPolicy(props))) {
+          throw unavailable;
+        }
+        if (unavailable.getCause() instanceof RejectionException) {
+          // too busy to even ask TeamForge, which says more than unreachable
+          throw (RejectionException) unavailable.getCause();
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("TeamForge cannot be reached right now to verify " + describeIds(artifactIds) + ", please try again in a few minutes\n\n");
+        sb.append("If this persists, please contact CM for assistance");
+
+        throw new RejectionException(sb.toString());
+      }
+
+      List<String> missing = new ArrayList<>();
+      for (Artifact artifact: found) {
+        if (!artifact.isFound()) {
+          missing.add(artifact.getId());
+        }
+      }
+
+      if (!missing.isEmpty()) {
+        StringBuilder sb = new StringBuilder();
+
+        boolean single = missing.size() == 1;
+
+        sb.append("Please make sure below requirements have been fulfilled:\n\n");
+        sb.append("* " + describeIds(missing) + (single ? " is valid and does exist\n" : " are valid and do exist\n"));
+        sb.append("* " + describeIds(missing) + (single ? " has" : " have") + " 'Fixed in Release' field properly valued\n\n");
+        sb.append("If all satisfied, we apology for the inconvenience and please contact CM for assistance");
+
+        throw new RejectionException(sb.toString());
+      }
+
+      artifacts = Collections.unmodifiableList(found);
+    }
+
+    return artifacts;
+  }
+
+  /**
+   * @return "artifact 'artf1'" or "artifacts 'artf1', 'artf2'"
+   */
+  private static String describeIds(List<String> ids) {
+    StringBuilder sb = new StringBuilder(ids.size() == 1 ? "artifact " : "artifacts ");
+    for (int idx = 0; idx < ids.size(); ++idx) {
+      sb.append(idx == 0 ? "" : ", ").append("'" + ids.get(idx) + "'");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return " of artifact 'artf1'" for messages about one of several
+   * artifacts, or "" if the commit names only this one
+   */
+  public String describe(Artifact artifact) {
+    return (artifacts == null || artifacts.size() == 1) ? "" : " of artifact '" + artifact.getId() + "'";
+  }
+
+  /**
+   * @return true if the artifact checks were skipped, as TeamForge was
+   * unavailable (see {@link #getArtifact()})
+   */
+  public boolean isDegraded() {
+    return unavailable != null && ArtifactLookup.POLICY_ALLOW.equals(ArtifactLookup.getOpenPolicy(props));
+  }
+
+  public String getPackageDescription() throws Exception {
+    return getPackageDescription(getArtifact());
+  }
+
+  private static String getPackageDescription(Artifact artifact) throws Exception {
+    String packageDescription = artifact.getPackageDescription();
+
+    if (packageDescription == null) {
+      throw new Exception("invalid package description: empty");
+    }
+
+    return packageDescription;
+  }
+
+  /**
+   * @return the parsed package description of the first artifact, shared
+   * with every other commit of the same package
+   */
+  public PackageDescription getPackage() throws Exception {
+    return getPackage(getArtifact());
+  }
+
+  public PackageDescription getPackage(Artifact artifact) throws Exception {
+    return PackageDescription.parse(getPackageDescription(artifact));
+  }
+
+  /**
+   * @return the package descriptions of all artifacts, in their order
+   */
+  public List<PackageDescription> getPackages() throws Exception {
+    List<PackageDescription> packages = new ArrayList<>();
+    for (Artifact artifact: getArtifacts()) {
+      packages.add(getPackage(artifact));
+    }
+    return packages;
+  }
+}
@@ -0,0 +1,219 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.sql.DriverManager;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running hook process, so that commits no longer pay for JVM startup,
+ * property loading and JDBC driver registration. Requests are accepted on
+ * the loopback interface only and served by {@link PreCommitHook#execute()}.
+ * One daemon serves every repository, each with its configured arguments
+ * (see {@link HookConfig}), and picks up configuration changes on the fly.
+ * A {@link StartCommit} hook may ask it to warm up ahead of a commit (see
+ * {@link CommitWarmup}).
+ */
+public class HookDaemon {
+  private static final String ENCODING = "UTF-8";
+
+  private final HookConfigWatcher config;
+  private final Properties props;
+  private final ExecutorService workers;
+  private final int socketTimeout;
+
+  private ServerSocket serverSocket;
+  private SnapshotRefresher refresher;
+
+  /**
+   * @param config the configuration; listening address, thread count and
+   * socket timeout are taken once, everything else per request
+   */
+  public HookDaemon(HookConfigWatcher config) {
+    this.config = config;
+    this.props = config.get().getProperties();
+    this.workers = Executors.newFixedThreadPool(HookUtils.getIntProperty(props, "daemon.threads", 16));
+    this.socketTimeout = HookUtils.getIntProperty(props, "daemon.socket.timeout", 10000);
+  }
+
+  public void serve() throws Exception {
+    int port = HookUtils.getIntProperty(props, "daemon.port", HookClient.DEFAULT_PORT);
+
+    serverSocket = new ServerSocket(port, 50, InetAddress.getByName(HookUtils.getProperty(props, "daemon.host", HookClient.DEFAULT_HOST)));
+
+    // warm up the jdbc driver and connections before the first commit arrives
+    DriverManager.getDrivers();
+    if (!HookUtils.getProperty(props, "jdbc.url", "").isEmpty()) {
+      try {
+        ConnectionPool.getInstance(props).fill();
+      }
+      catch (Exception ex) {
+        HookUtils.print(System.err, null, "failed to pre-fill the connection pool, will retry on demand", ex);
+      }
+
+      if (!HookUtils.getProperty(props, "snapshot.file", "").isEmpty()) {
+        refresher = new SnapshotRefresher(props);
+        refresher.start();
+      }
+    }
+
+    CommitWarmup.getInstance(props).seed();
+
+    while (!serverSocket.isClosed()) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      }
+      catch (IOException ex) {
+        if (serverSocket.isClosed()) {
+          break;
+        }
+        throw ex;
+      }
+
+      workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          handle(socket);
+        }
+      });
+    }
+  }
+
+  public void shutdown() {
+    try {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    }
+    catch (IOException ex) {
+      // ignore, we are going down anyway
+    }
+
+    if (refresher != null) {
+      refresher.stop();
+    }
+
+    try {
+      config.close();
+    }
+    catch (IOException ex) {
+      // ignore, we are going down anyway
+    }
+
+    workers.shutdown();
+    try {
+      workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void handle(Socket socket) {
+    try (Socket sock = socket) {
+      // a client that never sends its request must not hold a worker
+      sock.setSoTimeout(socketTimeout);
+
+      DataInputStream dis = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+      DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
+
+      int[] command = new int[1];
+      String[] args = HookProtocol.readRequest(dis, command);
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      int exitValue = dispatch(command[0], args, new PrintStream(bos, true, ENCODING));
+
+      HookProtocol.writeResponse(dos, exitValue, bos.toString(ENCODING));
+    }
+    catch (Exception ex) {
+      HookUtils.print(System.err, null, "failed to serve hook request", ex);
+    }
+  }
+
+  private int dispatch(int command, String[] args, PrintStream err) {
+    if (command == HookProtocol.COMMAND_STATS) {
+      printStats(err);
+      return 0;
+    }
+
+    if (command == HookProtocol.COMMAND_WARM) {
+      // answered at once, the commit is not held up by its warm-up
+      if (args.length >= 2) {
+        CommitWarmup.getInstance(props).submit(config.get().getProperties(), args[1]);
+      }
+      return 0;
+    }
+
+    if (command != HookProtocol.COMMAND_RUN) {
+      HookUtils.print(err, null, PreCommitHook.SYS_ERROR_MESSAGE, new Exception("bad request: unknown command '" + command + "'"));
+      return 1;
+    }
+
+    // one snapshot per commit, reloads only affect later commits
+    HookConfig snapshot = config.get();
+
+    try {
+      PreCommitHook hook = new PreCommitHook(snapshot.getArguments(args), snapshot.getProperties(), err);
+      int exitValue = hook.execute();
+
+      CommitWarmup.getInstance(props).record(hook.getAuthor(), hook.getMetrics().getArtifactId(), hook.getMetrics().getOutcome());
+
+      return exitValue;
+    }
+    catch (Exception ex) {
+      HookUtils.print(err, null, PreCommitHook.SYS_ERROR_MESSAGE, ex);
+      return 1;
+    }
+  }
+
+  private void printStats(PrintStream ps) {
+    for (ConnectionPool pool: ConnectionPool.getInstances()) {
+      ps.println(pool.getMetrics());
+    }
+    for (AdmissionControl admission: AdmissionControl.getInstances()) {
+      ps.println(admission.getMetrics());
+    }
+    ps.println(ArtifactCache.getInstance(config.get().getProperties()).getMetrics());
+    ps.println(CircuitBreaker.getInstance(config.get().getProperties()).getMetrics());
+    ps.println(CommitWarmup.getInstance(props).getMetrics());
+
+    AuditLog audit = AuditLog.getInstance();
+    if (audit != null) {
+      ps.println(audit.getMetrics());
+    }
+  }
+
+  public static void main(String[] args) {
+    try {
+      // an external hook.properties may be given as argument or through -Dhook.config
+      String configFile = (args.length > 0) ? args[0] : System.getProperty(HookConfig.CONFIG_PROPERTY);
+
+      final HookDaemon daemon = new HookDaemon(new HookConfigWatcher(configFile));
+
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          daemon.shutdown();
+        }
+      });
+
+      daemon.serve();
+    }
+    catch (Exception ex) {
+      HookUtils.print(System.err, null, PreCommitHook.SYS_ERROR_MESSAGE, ex);
+      System.exit(1);
+    }
+  }
+}
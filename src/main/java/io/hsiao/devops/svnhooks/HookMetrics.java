@@ -0,0 +1,231 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-commit timings. Phases are recorded from whichever thread runs them
+ * (commands finish on pool threads), and the whole record is appended as one
+ * JSON line to 'metrics.file' when the commit is done, so that the slow part
+ * of a slow commit can be found without attaching a profiler.
+ */
+public class HookMetrics {
+  /**
+   * Optional wall-clock time (epoch milliseconds) at which the hook script
+   * launched the JVM, used to report the JVM startup phase.
+   */
+  public static final String START_PROPERTY = "hook.start.millis";
+
+  private final long startMillis = System.currentTimeMillis();
+  private final long startNanos = System.nanoTime();
+
+  // phase name -> {total nanoseconds, count}
+  private final Map<String, long[]> phases = new LinkedHashMap<>();
+  private final AtomicInteger processes = new AtomicInteger();
+
+  private volatile String repoPath;
+  private volatile String txnName;
+  private volatile String author;
+  private volatile String artifactId;
+  private volatile String outcome;
+
+  public HookMetrics() {
+    String launched = System.getProperty(START_PROPERTY, "").trim();
+
+    if (!launched.isEmpty()) {
+      try {
+        record("jvm.startup", TimeUnit.MILLISECONDS.toNanos(startMillis - Long.parseLong(launched)));
+      }
+      catch (NumberFormatException ex) {
+        // not worth failing a commit over
+      }
+    }
+  }
+
+  /**
+   * @return a timestamp to hand back to {@link #stop(String, long)}
+   */
+  public long start() {
+    return System.nanoTime();
+  }
+
+  public void stop(String phase, long start) {
+    record(phase, System.nanoTime() - start);
+  }
+
+  public void record(String phase, long nanos) {
+    synchronized (phases) {
+      long[] totals = phases.get(phase);
+      if (totals == null) {
+        totals = new long[2];
+        phases.put(phase, totals);
+      }
+      totals[0] += nanos;
+      totals[1] += 1;
+    }
+  }
+
+  public void processSpawned() {
+    processes.incrementAndGet();
+  }
+
+  public int getProcessCount() {
+    return processes.get();
+  }
+
+  public String getRepoPath() {
+    return repoPath;
+  }
+
+  public void setRepoPath(String repoPath) {
+    this.repoPath = repoPath;
+  }
+
+  public String getTxnName() {
+    return txnName;
+  }
+
+  public void setTxnName(String txnName) {
+    this.txnName = txnName;
+  }
+
+  public void setAuthor(String author) {
+    this.author = author;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public void setArtifactId(String artifactId) {
+    this.artifactId = artifactId;
+  }
+
+  public String getOutcome() {
+    return outcome;
+  }
+
+  public void setOutcome(String outcome) {
+    this.outcome = outcome;
+  }
+
+  public long getStartMillis() {
+    return startMillis;
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  public String toJson() {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+    StringBuilder sb = new StringBuilder(512);
+
+    sb.append('{');
+    appendField(sb, "time", format.format(new Date(startMillis))).append(',');
+    appendField(sb, "repo", repoPath).append(',');
+    appendField(sb, "txn", txnName).append(',');
+    appendField(sb, "author", author).append(',');
+    appendField(sb, "artifact", artifactId).append(',');
+    appendField(sb, "outcome", outcome).append(',');
+    appendString(sb, "totalMs").append(':').append(toMillis(System.nanoTime() - startNanos)).append(',');
+    appendString(sb, "processes").append(':').append(processes.get()).append(',');
+    appendString(sb, "phases").append(":{");
+
+    synchronized (phases) {
+      boolean first = true;
+      for (Map.Entry<String, long[]> entry: phases.entrySet()) {
+        if (!first) {
+          sb.append(',');
+        }
+        first = false;
+
+        appendString(sb, entry.getKey()).append(":{");
+        appendString(sb, "ms").append(':').append(toMillis(entry.getValue()[0])).append(',');
+        appendString(sb, "count").append(':').append(entry.getValue()[1]).append('}');
+      }
+    }
+
+    sb.append("}}");
+
+    return sb.toString();
+  }
+
+  /**
+   * Appends the record to 'metrics.file', if configured. The line goes out
+   * in a single append so that concurrent hook processes don't interleave.
+   */
+  public void write(Properties props) throws Exception {
+    String file = HookUtils.getProperty(props, "metrics.file", "");
+    if (file.isEmpty()) {
+      return;
+    }
+
+    byte[] line = (toJson() + "\n").getBytes(StandardCharsets.UTF_8);
+
+    try (OutputStream os = new FileOutputStream(new File(file), true)) {
+      os.write(line);
+    }
+  }
+
+  private static String toMillis(long nanos) {
+    return String.valueOf(nanos / 1000L / 1000.0);
+  }
+
+  private static StringBuilder appendField(StringBuilder sb, String name, String value) {
+    appendString(sb, name).append(':');
+
+    if (value == null) {
+      return sb.append("null");
+    }
+
+    return appendString(sb, value);
+  }
+
+  private static StringBuilder appendString(StringBuilder sb, String value) {
+    sb.append('"');
+
+    for (int idx = 0; idx < value.length(); ++idx) {
+      char ch = value.charAt(idx);
+
+      switch (ch) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (ch < 0x20) {
+            sb.append(String.format("\\u%04x", (int) ch));
+          }
+          else {
+            sb.append(ch);
+          }
+      }
+    }
+
+    return sb.append('"');
+  }
+}
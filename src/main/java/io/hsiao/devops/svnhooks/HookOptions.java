@@ -0,0 +1,166 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Optional hook arguments (everything after the repository path and the
+ * transaction name), see README for their meaning.
+ */
+public class HookOptions {
+  private String[] superUsers = {};
+  private String[] statuses = {"Opened", "Reopened", "Active"};
+  private String[] suffixes = {};
+  private String limit;
+  private String[] patterns = {};
+
+  private boolean dbdataCheck = true;
+  private boolean namingCheck = true;
+  private boolean logmsgCheck = false;
+  private boolean forbidBinary = false;
+  private boolean reportAll = false;
+  private boolean revision = false;
+
+  private final List<String> arguments;
+
+  public HookOptions(List<String> arguments) {
+    this.arguments = Collections.unmodifiableList(new ArrayList<>(arguments));
+
+    for (String argument: arguments) {
+      if (argument.startsWith("--superusers=")) {
+        superUsers = splitList(HookUtils.getArgumentValue(argument));
+      }
+      if (argument.startsWith("--allowable-statuses=")) {
+        statuses = splitList(HookUtils.getArgumentValue(argument));
+      }
+      if (argument.startsWith("--forbidden-suffixes=")) {
+        suffixes = splitList(HookUtils.getArgumentValue(argument));
+      }
+      if (argument.startsWith("--file-size-limit=")) {
+        limit = HookUtils.getArgumentValue(argument);
+      }
+      if (argument.startsWith("--forbidden-patterns=")) {
+        patterns = splitList(HookUtils.getArgumentValue(argument));
+      }
+      if (argument.equals("--forbid-binary")) {
+        forbidBinary = true;
+      }
+      if (argument.equals("--no-check-db")) {
+        dbdataCheck = false;
+      }
+      if (argument.equals("--no-check-naming")) {
+        namingCheck = false;
+      }
+      if (argument.equals("--check-log-message")) {
+        logmsgCheck = true;
+      }
+      if (argument.equals("--report-all")) {
+        reportAll = true;
+      }
+      if (argument.equals("--revision")) {
+        revision = true;
+      }
+    }
+  }
+
+  /**
+   * Splits a comma separated value, dropping the empty entries of e.g.
+   * "a,,b" or a trailing comma.
+   */
+  private static String[] splitList(String value) {
+    List<String> values = new ArrayList<>();
+    for (String entry: value.split(",")) {
+      if (!entry.isEmpty()) {
+        values.add(entry);
+      }
+    }
+    return values.toArray(new String[values.size()]);
+  }
+
+  /**
+   * Checks the arguments that would otherwise fail every commit.
+   */
+  public void validate() throws Exception {
+    if (patterns.length > BytePatternMatcher.MAX_PATTERNS) {
+      throw new Exception("bad argument '--forbidden-patterns': at most " + BytePatternMatcher.MAX_PATTERNS + " patterns are supported, got " + patterns.length);
+    }
+  }
+
+  public boolean isSuperUser(String author) {
+    return Arrays.asList(superUsers).contains(author);
+  }
+
+  public String[] getStatuses() {
+    return statuses;
+  }
+
+  public String[] getSuffixes() {
+    return suffixes;
+  }
+
+  public String getFileSizeLimit() {
+    return limit;
+  }
+
+  public String[] getPatterns() {
+    return patterns;
+  }
+
+  public boolean isForbidBinary() {
+    return forbidBinary;
+  }
+
+  /**
+   * @return true if file contents are streamed, see {@link ContentRule}
+   */
+  public boolean isContentCheck() {
+    return forbidBinary || patterns.length > 0;
+  }
+
+  public boolean isDbdataCheck() {
+    return dbdataCheck;
+  }
+
+  public boolean isNamingCheck() {
+    return namingCheck;
+  }
+
+  public boolean isLogmsgCheck() {
+    return logmsgCheck;
+  }
+
+  public boolean isReportAll() {
+    return reportAll;
+  }
+
+  /**
+   * @return true if the transaction name is a committed revision instead
+   */
+  public boolean isRevision() {
+    return revision;
+  }
+
+  /**
+   * Raw access for custom rules that define arguments of their own.
+   *
+   * @return the value of the first "--name=value" argument, or null
+   */
+  public String getArgumentValue(String name) {
+    for (String argument: arguments) {
+      if (argument.startsWith("--" + name + "=")) {
+        return HookUtils.getArgumentValue(argument);
+      }
+    }
+    return null;
+  }
+
+  public boolean hasArgument(String name) {
+    return arguments.contains("--" + name);
+  }
+
+  public List<String> getArguments() {
+    return arguments;
+  }
+}
@@ -0,0 +1,77 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Wire format spoken between {@link HookClient} and {@link HookDaemon}.
+ *
+ * <pre>
+ * request:  int magic, int command, int argc, argc * utf(arg)
+ * response: int exit code, int length, length * byte (stderr text, UTF-8)
+ * </pre>
+ *
+ * The arguments are those of the hook for COMMAND_RUN, none for
+ * COMMAND_STATS, and the repository path and user for COMMAND_WARM (see
+ * {@link StartCommit}); at most MAX_ARGS of them.
+ */
+public class HookProtocol {
+  public static final int MAGIC = 0x53564e48;
+
+  public static final int COMMAND_RUN = 1;
+  public static final int COMMAND_STATS = 2;
+  public static final int COMMAND_WARM = 3;
+
+  public static final int MAX_ARGS = 256;
+
+  private static final String ENCODING = "UTF-8";
+
+  public static void writeRequest(DataOutputStream dos, int command, String[] args) throws IOException {
+    dos.writeInt(MAGIC);
+    dos.writeInt(command);
+    dos.writeInt(args.length);
+    for (String arg: args) {
+      dos.writeUTF(arg);
+    }
+    dos.flush();
+  }
+
+  public static String[] readRequest(DataInputStream dis, int[] command) throws IOException {
+    if (dis.readInt() != MAGIC) {
+      throw new IOException("bad request: unexpected magic number");
+    }
+    command[0] = dis.readInt();
+
+    int argc = dis.readInt();
+    if (argc < 0 || argc > MAX_ARGS) {
+      throw new IOException("bad request: " + argc + " arguments, at most " + MAX_ARGS + " are allowed");
+    }
+
+    String[] args = new String[argc];
+    for (int idx = 0; idx < args.length; ++idx) {
+      args[idx] = dis.readUTF();
+    }
+
+    return args;
+  }
+
+  public static void writeResponse(DataOutputStream dos, int exitValue, String message) throws IOException {
+    byte[] bytes = message.getBytes(ENCODING);
+
+    dos.writeInt(exitValue);
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+    dos.flush();
+  }
+
+  public static int readResponse(DataInputStream dis, String[] message) throws IOException {
+    int exitValue = dis.readInt();
+
+    byte[] bytes = new byte[dis.readInt()];
+    dis.readFully(bytes);
+    message[0] = new String(bytes, ENCODING);
+
+    return exitValue;
+  }
+}
@@ -0,0 +1,25 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * Service provider interface for hook rules. Implement {@link CommitRule} or
+ * {@link PathRule} and list the class in
+ * META-INF/services/io.hsiao.devops.svnhooks.HookRule to have it picked up
+ * by {@link RulePlan#getDefault()}. Rules are shared between commits (and
+ * threads), so they must not keep per-commit state in fields.
+ */
+public interface HookRule {
+  /** Rules that only look at the commit message and the changed paths. */
+  int COST_LOCAL = 0;
+
+  /** Rules that need TeamForge artifact data (one database lookup per commit). */
+  int COST_ARTIFACT = 100;
+
+  /** Rules that spawn processes or read file contents. */
+  int COST_IO = 1000;
+
+  /**
+   * Relative cost of the rule; the plan runs cheaper rules first and reports
+   * violations in the same order.
+   */
+  int getCost();
+}
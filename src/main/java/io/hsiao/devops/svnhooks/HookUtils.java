@@ -3,28 +3,11 @@ package io.hsiao.devops.svnhooks;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Properties;
 
 public class HookUtils {
   public static void print(PrintStream ps, String author, String message) {
-    final String SYMBOL = "-";
-
-    int length = Collections.max(Arrays.asList(message.split("\\n")), new Comparator<String>() {
-      @Override
-      public int compare(String str1, String str2) {
-        return str1.length() > str2.length() ? 1:0;
-      }
-    }).length();
-
-    ps.println(new String(new char[length]).replaceAll("\0", SYMBOL));
-    if (author != null) {
-      ps.println("Dear " + author + "\n");
-    }
-    ps.println(message);
-    ps.println(new String(new char[length]).replaceAll("\0", SYMBOL));
+    ReportWriter.write(ps, author, message);
   }
 
   public static void print(PrintStream ps, String author, String message, Throwable ex) {
@@ -56,6 +39,20 @@ public class HookUtils {
     return value;
   }
 
+  public static String getProperty(Properties props, String name, String defaultValue) {
+    String value = props.getProperty(name, "");
+
+    if (value.trim().isEmpty()) {
+      return defaultValue;
+    }
+
+    return value.trim();
+  }
+
+  public static int getIntProperty(Properties props, String name, int defaultValue) {
+    return Integer.valueOf(getProperty(props, name, String.valueOf(defaultValue)));
+  }
+
   public static String getArgumentValue(String argument) {
     return argument.substring(argument.indexOf("=") + 1);
   }
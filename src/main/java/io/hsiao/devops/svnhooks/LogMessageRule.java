@@ -0,0 +1,31 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.regex.Pattern;
+
+/**
+ * --check-log-message: the message must carry "What" and "Reviewed By".
+ */
+public class LogMessageRule implements CommitRule {
+  private static final Pattern WHAT_PATTERN = Pattern.compile("^\\s*what\\s*:\\s*\\S+.*$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+  private static final Pattern REVIEWED_BY_PATTERN = Pattern.compile("^\\s*reviewed\\s+by\\s*:\\s*\\S+.*$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+  @Override
+  public int getCost() {
+    return COST_LOCAL;
+  }
+
+  @Override
+  public void check(HookContext context) throws Exception {
+    if (!context.getOptions().isLogmsgCheck()) {
+      return;
+    }
+
+    if (!WHAT_PATTERN.matcher(context.getMessage()).find()) {
+      throw new RejectionException("Please provide 'What' information in the commit message");
+    }
+
+    if (!REVIEWED_BY_PATTERN.matcher(context.getMessage()).find()) {
+      throw new RejectionException("Please provide 'Reviewed By' information in the commit message");
+    }
+  }
+}
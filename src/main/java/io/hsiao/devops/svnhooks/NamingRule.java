@@ -0,0 +1,35 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.List;
+
+/**
+ * Added paths must not contain whitespaces (disabled by --no-check-naming).
+ */
+public class NamingRule extends AbstractPathRule {
+  @Override
+  public int getCost() {
+    return COST_LOCAL;
+  }
+
+  @Override
+  protected boolean isEnabled(HookContext context) {
+    return context.getOptions().isNamingCheck();
+  }
+
+  @Override
+  protected boolean isViolated(HookContext context, ChangeRecord record) {
+    return record.isAdded() && record.getPath().contains(" ");
+  }
+
+  @Override
+  protected String getMessage(HookContext context, List<String> paths) {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("Below changes contain whitespaces in the naming, please check\n\n");
+    ReportWriter.appendPaths(sb, paths, context.getProperties());
+    sb.append("\n");
+    sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,235 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parsed form of a package description such as
+ * "[branch:trunk/,branches/r1/][version:1.0,1.1][access:alice,bob][repository:repo]".
+ * The text is scanned once for all tags; instances are immutable and shared
+ * by every artifact of the same package, as they are cached by text.
+ *
+ * Tags are matched like the regular expressions they replace: case
+ * insensitive names, the first occurrence of a tag wins, and a value ends
+ * at the first ']' and never spans lines. Values are split on ',' as is.
+ */
+public class PackageDescription {
+  private static final String ACCESS = "access";
+  private static final String VERSION = "version";
+  private static final String REPOSITORY = "repository";
+  private static final String BRANCH = "branch";
+
+  private static final int CACHE_SIZE = 4096;
+  private static final ConcurrentMap<String, PackageDescription> CACHE = new ConcurrentHashMap<>();
+
+  private final List<String> access;
+  private final Set<String> accessSet;
+  private final List<String> versions;
+  private final Set<String> versionSet;
+  private final String repository;
+  private final List<String> branches;
+  private final PathTrie branchTrie;
+
+  private PackageDescription(String access, String versions, String repository, String branches) {
+    this.access = split(access);
+    this.accessSet = toSet(this.access);
+    this.versions = split(versions);
+    this.versionSet = toSet(this.versions);
+    this.repository = (repository == null) ? null : repository.intern();
+    this.branches = split(branches);
+    this.branchTrie = (this.branches == null) ? null : PathTrie.ofPrefixes(this.branches);
+  }
+
+  /**
+   * @return the parsed description, from the process-wide cache if this
+   * text was seen before
+   */
+  public static PackageDescription parse(String text) {
+    PackageDescription description = CACHE.get(text);
+
+    if (description == null) {
+      description = parseText(text);
+
+      if (CACHE.size() >= CACHE_SIZE) {
+        // packages are few, so this only guards against unbounded growth
+        CACHE.clear();
+      }
+      CACHE.put(text, description);
+    }
+
+    return description;
+  }
+
+  private static PackageDescription parseText(String text) {
+    String[] values = new String[4];
+
+    int length = text.length();
+    int idx = text.indexOf('[');
+
+    while (idx >= 0) {
+      int pos = skipWhitespace(text, idx + 1);
+
+      int nameStart = pos;
+      while (pos < length && text.charAt(pos) != ':' && text.charAt(pos) != ']' && !isWhitespace(text.charAt(pos))) {
+        ++pos;
+      }
+      int nameEnd = pos;
+
+      pos = skipWhitespace(text, pos);
+
+      int slot = getSlot(text, nameStart, nameEnd);
+      if (slot >= 0 && values[slot] == null && pos < length && text.charAt(pos) == ':') {
+        int valueStart = pos + 1;
+        int valueEnd = valueStart;
+        while (valueEnd < length && text.charAt(valueEnd) != ']' && !isLineTerminator(text.charAt(valueEnd))) {
+          ++valueEnd;
+        }
+
+        if (valueEnd < length && text.charAt(valueEnd) == ']') {
+          values[slot] = text.substring(valueStart, valueEnd).trim();
+        }
+      }
+
+      idx = text.indexOf('[', idx + 1);
+    }
+
+    return new PackageDescription(values[0], values[1], values[2], values[3]);
+  }
+
+  private static int skipWhitespace(String text, int pos) {
+    while (pos < text.length() && isWhitespace(text.charAt(pos))) {
+      ++pos;
+    }
+    return pos;
+  }
+
+  /**
+   * @return true for the characters of the regular expression class \s
+   */
+  private static boolean isWhitespace(char ch) {
+    return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+  }
+
+  private static int getSlot(String text, int start, int end) {
+    String[] names = {ACCESS, VERSION, REPOSITORY, BRANCH};
+
+    for (int slot = 0; slot < names.length; ++slot) {
+      if (end - start == names[slot].length() && matchesName(text, start, names[slot])) {
+        return slot;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Compares ignoring the case of ASCII letters only, like
+   * {@link java.util.regex.Pattern#CASE_INSENSITIVE} does.
+   */
+  private static boolean matchesName(String text, int start, String name) {
+    for (int idx = 0; idx < name.length(); ++idx) {
+      char ch = text.charAt(start + idx);
+      if (ch >= 'A' && ch <= 'Z') {
+        ch += 'a' - 'A';
+      }
+      if (ch != name.charAt(idx)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLineTerminator(char ch) {
+    return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+  }
+
+  private static List<String> split(String value) {
+    if (value == null) {
+      return null;
+    }
+
+    String[] items = value.split(",");
+    for (int idx = 0; idx < items.length; ++idx) {
+      items[idx] = items[idx].intern();
+    }
+
+    return Collections.unmodifiableList(Arrays.asList(items));
+  }
+
+  private static Set<String> toSet(List<String> items) {
+    return (items == null) ? null : Collections.unmodifiableSet(new HashSet<>(items));
+  }
+
+  public boolean hasAccess() {
+    return access != null;
+  }
+
+  /**
+   * @return true if there is no "[access:...]" tag or it lists the author
+   */
+  public boolean isAccessAllowed(String author) {
+    return accessSet == null || accessSet.contains(author);
+  }
+
+  public List<String> getAccess() {
+    return access;
+  }
+
+  /**
+   * @return the "[version:...]" values in order, or null without that tag
+   */
+  public List<String> getVersions() {
+    return versions;
+  }
+
+  public boolean hasVersion(String version) {
+    return versionSet != null && versionSet.contains(version);
+  }
+
+  /**
+   * @return the "[repository:...]" value, or null without that tag
+   */
+  public String getRepository() {
+    return repository;
+  }
+
+  /**
+   * @return the "[branch:...]" prefixes, or null without that tag
+   */
+  public List<String> getBranches() {
+    return branches;
+  }
+
+  /**
+   * @return a trie of the branch prefixes, or null without that tag
+   */
+  public PathTrie getBranchTrie() {
+    return branchTrie;
+  }
+
+  @Override
+  public String toString() {
+    List<String> tags = new ArrayList<>();
+
+    if (branches != null) {
+      tags.add("branch:" + branches);
+    }
+    if (versions != null) {
+      tags.add("version:" + versions);
+    }
+    if (access != null) {
+      tags.add("access:" + access);
+    }
+    if (repository != null) {
+      tags.add("repository:" + repository);
+    }
+
+    return tags.toString();
+  }
+}
@@ -0,0 +1,28 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.List;
+
+/**
+ * Per-commit state of a {@link PathRule}. Checks that hold resources (e.g.
+ * a {@link PathSpool}) also implement {@link java.io.Closeable}, and are
+ * closed once the commit was evaluated.
+ */
+public interface PathCheck {
+  /**
+   * @return true if the path violates the rule
+   */
+  boolean accept(ChangeRecord record) throws Exception;
+
+  /**
+   * Called once after all paths were accepted without any violation, for
+   * checks that batch their work (e.g. file sizes).
+   *
+   * @return further violating paths, never null
+   */
+  List<String> finish() throws Exception;
+
+  /**
+   * @return the rejection message for the given violating paths
+   */
+  String getMessage(List<String> paths);
+}
@@ -0,0 +1,15 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * Rule evaluated against every changed path, in a single pass shared by all
+ * path rules.
+ */
+public interface PathRule extends HookRule {
+  /**
+   * Prepares the per-commit state of the rule.
+   *
+   * @return the check to feed the changed paths to, or null if the rule does
+   * not apply to this commit (e.g. it was not enabled by the arguments)
+   */
+  PathCheck begin(HookContext context) throws Exception;
+}
@@ -0,0 +1,98 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paths a {@link PathCheck} collects during the pass for its batched work.
+ * At most 'capacity' of them are held in memory, older ones are spilled to
+ * a temporary file, so that a commit of a million files does not hold a
+ * million paths. Subversion paths never contain line breaks.
+ *
+ * Paths are added first, then read back in batches of at most 'capacity',
+ * in the order they were added. Closing deletes the file.
+ */
+public class PathSpool implements Closeable {
+  private final int capacity;
+  private final List<String> paths = new ArrayList<>();
+
+  private Path file;
+  private BufferedWriter writer;
+  private BufferedReader reader;
+
+  public PathSpool(int capacity) {
+    this.capacity = Math.max(1, capacity);
+  }
+
+  public void add(String path) throws IOException {
+    if (paths.size() >= capacity) {
+      spill();
+    }
+    paths.add(path);
+  }
+
+  private void spill() throws IOException {
+    if (writer == null) {
+      file = Files.createTempFile("svnhooks-", ".paths");
+      writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    for (String path: paths) {
+      writer.write(path);
+      writer.write('\n');
+    }
+    paths.clear();
+  }
+
+  /**
+   * @return the next paths, empty once all were read back
+   */
+  public List<String> next() throws IOException {
+    List<String> batch = new ArrayList<>();
+
+    if (writer != null) {
+      if (reader == null) {
+        writer.close();
+        reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+      }
+
+      String line;
+      while (batch.size() < capacity && (line = reader.readLine()) != null) {
+        batch.add(line);
+      }
+      if (!batch.isEmpty()) {
+        return batch;
+      }
+    }
+
+    batch.addAll(paths);
+    paths.clear();
+
+    return batch;
+  }
+
+  @Override
+  public void close() throws IOException {
+    paths.clear();
+
+    if (file != null) {
+      try {
+        if (reader != null) {
+          reader.close();
+        }
+        writer.close();
+      }
+      finally {
+        Files.deleteIfExists(file);
+        file = null;
+      }
+    }
+  }
+}
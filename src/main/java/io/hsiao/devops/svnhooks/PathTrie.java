@@ -0,0 +1,101 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Character trie answering "does the path start with any of the prefixes"
+ * or "does the path end with any of the suffixes" in a single walk over the
+ * path, however many entries were added.
+ */
+public class PathTrie {
+  private final Node root = new Node();
+  private final boolean reversed;
+
+  private PathTrie(boolean reversed) {
+    this.reversed = reversed;
+  }
+
+  public static PathTrie ofPrefixes(Collection<String> prefixes) {
+    PathTrie trie = new PathTrie(false);
+    for (String prefix: prefixes) {
+      trie.add(prefix);
+    }
+    return trie;
+  }
+
+  public static PathTrie ofSuffixes(Collection<String> suffixes) {
+    PathTrie trie = new PathTrie(true);
+    for (String suffix: suffixes) {
+      trie.add(suffix);
+    }
+    return trie;
+  }
+
+  private void add(String entry) {
+    Node node = root;
+
+    int length = entry.length();
+    for (int idx = 0; idx < length; ++idx) {
+      node = node.getOrAddChild(entry.charAt(reversed ? length - 1 - idx : idx));
+    }
+
+    node.terminal = true;
+  }
+
+  public boolean matches(String path) {
+    Node node = root;
+
+    int length = path.length();
+    for (int idx = 0; ; ++idx) {
+      if (node.terminal) {
+        return true;
+      }
+      if (idx == length) {
+        return false;
+      }
+
+      node = node.getChild(path.charAt(reversed ? length - 1 - idx : idx));
+      if (node == null) {
+        return false;
+      }
+    }
+  }
+
+  private static class Node {
+    // paths branch out little per character, so sorted arrays beat hash maps here
+    private char[] labels = new char[0];
+    private Node[] children = new Node[0];
+    private boolean terminal;
+
+    private Node getChild(char label) {
+      int idx = Arrays.binarySearch(labels, label);
+      return idx >= 0 ? children[idx] : null;
+    }
+
+    private Node getOrAddChild(char label) {
+      int idx = Arrays.binarySearch(labels, label);
+      if (idx >= 0) {
+        return children[idx];
+      }
+
+      int insertAt = -idx - 1;
+      char[] newLabels = new char[labels.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+
+      System.arraycopy(labels, 0, newLabels, 0, insertAt);
+      System.arraycopy(children, 0, newChildren, 0, insertAt);
+      System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+      System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+      Node child = new Node();
+      newLabels[insertAt] = label;
+      newChildren[insertAt] = child;
+
+      labels = newLabels;
+      children = newChildren;
+
+      return child;
+    }
+  }
+}
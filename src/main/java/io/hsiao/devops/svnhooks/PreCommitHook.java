@@ -1,81 +1,43 @@
 package io.hsiao.devops.svnhooks;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.util.ArrayList;
+import java.io.PrintStream;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Future;
 
 public class PreCommitHook {
-  private static final String PROPERTY_FILE_NAME = "hook.properties";
-  private static final String SYS_ERROR_MESSAGE = "Sorry, it's not your fault, it's ours, please contact CM for assistance";
+  public static final String PROPERTY_FILE_NAME = "hook.properties";
+  public static final String SYS_ERROR_MESSAGE = "Sorry, it's not your fault, it's ours, please contact CM for assistance";
 
   private String repoPath;
   private String txnName;
+  private String[] target;
 
   private Properties props;
+  private PrintStream err = System.err;
 
-  private String[] superUsers = {};
-  private String[] statuses = {"Opened", "Reopened", "Active"};
-  private String[] suffixes = {};
+  private HookOptions options;
+  private HookMetrics metrics;
+  private RulePlan plan;
+
+  private String svnlook;
+
+  private Future<String> authorTask;
+  private Future<String> messageTask;
 
   private String author;
   private String message;
-  private String[] changed;
-  private String limit;
+  private ChangeSource changed;
 
-  private String artifactId;
-  private String artifactStatus;
-  private String fixedInRelease;
-  private String fixedInReleaseStatus;
-  private String packageDescription;
+  private FsfsTransaction transaction;
 
-  private boolean dbdataCheck = true;
-  private boolean namingCheck = true;
-  private boolean logmsgCheck = false;
+  private RejectionException rejection;
+  private String detail;
 
   public PreCommitHook(String[] args) {
-    // parse command line arguments
-    if (args.length < 2) {
-      HookUtils.print(System.err, null, SYS_ERROR_MESSAGE, new Exception("bad arguments: both repository path and transaction name are mandatory"));
-      System.exit(1);
-    }
-
-    repoPath = args[0];
-    txnName = args[1];
-
-    for (int idx = 2; idx < args.length; ++idx) {
-      if (args[idx].startsWith("--superusers=")) {
-        superUsers = HookUtils.getArgumentValue(args[idx]).split(",");
-      }
-      if (args[idx].startsWith("--allowable-statuses=")) {
-        statuses = HookUtils.getArgumentValue(args[idx]).split(",");
-      }
-      if (args[idx].startsWith("--forbidden-suffixes=")) {
-        suffixes = HookUtils.getArgumentValue(args[idx]).split(",");
-      }
-      if (args[idx].startsWith("--file-size-limit=")) {
-        limit = HookUtils.getArgumentValue(args[idx]);
-      }
-      if (args[idx].equals("--no-check-db")) {
-        dbdataCheck = false;
-      }
-      if (args[idx].equals("--no-check-naming")) {
-        namingCheck = false;
-      }
-      if (args[idx].equals("--check-log-message")) {
-        logmsgCheck = true;
-      }
-    }
-
-    // load classpath properties
     try {
-      props = HookUtils.loadProperties(getClass(), PROPERTY_FILE_NAME);
+      HookConfig config = HookConfig.load();
+      init(config.getArguments(args), config.getProperties());
     }
     catch (Exception ex) {
       HookUtils.print(System.err, null, SYS_ERROR_MESSAGE, ex);
@@ -83,405 +45,219 @@ public class PreCommitHook {
     }
   }
 
-  public void run() {
-    try {
-      fetchAuthor();
-      if (isSuperUser()) {
-        return;
-      }
-
-      fetchMessage();
-      fetchArtifactId();
-      fetchFromDBQuery();
-
-      checkAccessStatus();
-      checkArtifactStatus();
-      checkFixedInRelease();
-      checkRepository();
-
-      fetchChanged();
-      checkChanged();
-
-      checkLogMessage();
-
-      System.exit(0);
-    }
-    catch (Exception ex) {
-      HookUtils.print(System.err, null, SYS_ERROR_MESSAGE, ex);
-      System.exit(1);
-    }
+  public PreCommitHook(String[] args, Properties props, PrintStream err) throws Exception {
+    this(args, props, err, RulePlan.getDefault());
   }
 
-  private boolean isSuperUser() {
-    return Arrays.asList(superUsers).contains(author);
+  /**
+   * @param plan the rules to check, e.g. only some of them when replaying
+   * (see {@link ReplayRunner})
+   */
+  public PreCommitHook(String[] args, Properties props, PrintStream err, RulePlan plan) throws Exception {
+    this.err = err;
+    this.plan = plan;
+    init(args, props);
   }
 
-  private void fetchAuthor() throws Exception {
-    String[] output = new String[1];
-
-    int exitValue = CommandRunner.run(String.format("svnlook author %s --transaction %s", repoPath, txnName), output);
-    if (exitValue != 0) {
-      throw new Exception(output[0]);
+  private void init(String[] args, Properties props) throws Exception {
+    // parse command line arguments
+    if (args.length < 2) {
+      throw new Exception("bad arguments: both repository path and transaction name are mandatory");
     }
 
-    author = output[0].trim();
-  }
-
-  private void fetchMessage() throws Exception {
-    String[] output = new String[1];
+    repoPath = args[0];
+    txnName = args[1];
+    options = new HookOptions(Arrays.asList(args).subList(2, args.length));
+    options.validate();
+    target = HookContext.getTarget(options, txnName);
 
-    int exitValue = CommandRunner.run(String.format("svnlook log %s --transaction %s", repoPath, txnName), output);
-    if (exitValue != 0) {
-      throw new Exception(output[0]);
+    if (plan == null) {
+      plan = RulePlan.getDefault();
     }
 
-    message = output[0].trim();
-  }
-
-  private void fetchArtifactId() {
-    Pattern pattern = Pattern.compile("\\A\\s*\\[\\s*(artf\\d+)\\s*\\]");
-    Matcher matcher = pattern.matcher(message);
-
-    if (!matcher.find()) {
-      HookUtils.print(System.err, author, "Please provide artifact id in the commit message (eg: [artf12306])");
-      System.exit(1);
-    }
+    this.props = props;
+    svnlook = HookUtils.getProperty(props, "svnlook.path", "svnlook");
 
-    artifactId = matcher.group(1).trim();
+    CommandRunner.configure(props);
   }
 
-  private void fetchFromDBQuery() throws Exception {
-    String jdbcUrl = HookUtils.getProperty(props, "jdbc.url");
-    String jdbcUsername = HookUtils.getProperty(props, "jdbc.username");
-    String jdbcPassword = HookUtils.getProperty(props, "jdbc.password");
+  public void run() {
+    System.exit(execute());
+  }
 
-    try (Connection conn = DriverManager.getConnection(jdbcUrl, jdbcUsername, jdbcPassword)) {
-      PreparedStatement pstmt = conn.prepareStatement(getSQLPreparedStatement());
-      pstmt.setString(1, artifactId);
-      ResultSet rs = pstmt.executeQuery();
+  /**
+   * Runs all checks without terminating the JVM, so that the hook can be
+   * hosted by a long-running process (see {@link HookDaemon}).
+   *
+   * @return the exit code expected by subversion (0 to accept the commit)
+   */
+  public int execute() {
+    metrics = new HookMetrics();
+    metrics.setRepoPath(repoPath);
+    metrics.setTxnName(txnName);
 
-      if (!rs.next()) {
-        StringBuilder sb = new StringBuilder();
+    rejection = null;
+    detail = null;
 
-        sb.append("Please make sure below requirements have been fulfilled:\n\n");
-        sb.append("* artifact '" + artifactId + "' is valid and does exist\n" );
-        sb.append("* artifact '" + artifactId + "' has 'Fixed in Release' field properly valued\n\n");
-        sb.append("If all satisfied, we apology for the inconvenience and please contact CM for assistance");
+    try {
+      startFetching();
 
-        HookUtils.print(System.err, author, sb.toString());
-        System.exit(1);
+      fetchAuthor();
+      if (isSuperUser()) {
+        metrics.setOutcome("superuser");
+        return 0;
       }
 
-      artifactStatus = rs.getString("artifact_status");
-      fixedInRelease = rs.getString("fixed_in_release");
-      fixedInReleaseStatus = rs.getString("fixed_in_release_status");
-      packageDescription = rs.getString("package_description");
-    }
-  }
+      fetchMessage();
+      startListing();
 
-  private String getSQLPreparedStatement() {
-    StringBuilder sb = new StringBuilder();
-
-    sb.append("SELECT fv.value artifact_status, fr.status fixed_in_release_status, f1.title fixed_in_release, f2.description package_description\n");
-    sb.append("FROM artifact a INNER JOIN field_value fv ON a.status_fv = fv.id\n");
-    sb.append(" INNER JOIN relationship r ON r.target_id = a.id\n");
-    sb.append(" INNER JOIN frs_release fr ON r.origin_id = fr.id\n");
-    sb.append(" INNER JOIN folder f1 ON fr.id = f1.id\n");
-    sb.append(" INNER JOIN folder f2 ON f2.id = f1.parent_folder_id\n");
-    sb.append("WHERE a.id = ?\n");
-    sb.append(" AND r.relationship_type_name = 'ArtifactResolvedRelease' AND r.is_deleted = '0'\n");
-    sb.append(" AND fv.is_deleted = '0'\n");
-    sb.append(" AND f1.is_deleted = '0'\n");
-    sb.append(" AND f2.is_deleted = '0'\n");
-
-    return sb.toString().trim();
-  }
+      HookContext context = new HookContext(props, svnlook, repoPath, txnName, author, message, options, metrics, transaction);
+      plan.execute(context, changed);
 
-  private void checkAccessStatus() {
-    if (packageDescription == null) {
-      HookUtils.print(System.err, author, SYS_ERROR_MESSAGE, new Exception("invalid package description: empty"));
-      System.exit(1);
+      if (context.isDegraded()) {
+        metrics.setOutcome("degraded");
+        detail = "accepted without the artifact checks, TeamForge is unavailable";
+      }
+      else {
+        metrics.setOutcome("accepted");
+      }
+      return 0;
     }
-
-    Pattern pattern = Pattern.compile("\\[\\s*access\\s*:(.*?)\\]", Pattern.CASE_INSENSITIVE);
-    Matcher matcher = pattern.matcher(packageDescription);
-    if (!matcher.find()) {
-      return;
+    catch (RejectionException ex) {
+      metrics.setOutcome("rejected");
+      rejection = ex;
+      detail = getFirstLine(ex.getMessage());
+      HookUtils.print(err, author, ex.getMessage());
+      return 1;
     }
-
-    String[] accesses = matcher.group(1).trim().split(",");
-    if (!Arrays.asList(accesses).contains(author)) {
-      StringBuilder sb = new StringBuilder();
-
-      sb.append("Sorry, you do not have permission to access the code branch\n\n");
-      sb.append("If any questions, please contact CM for assistance");
-
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
+    catch (Exception ex) {
+      metrics.setOutcome("error");
+      detail = ex.toString();
+      HookUtils.print(err, author, SYS_ERROR_MESSAGE, ex);
+      return 1;
     }
-  }
-
-  private void checkArtifactStatus() {
-    if (!Arrays.asList(statuses).contains(artifactStatus)) {
-      StringBuilder sb = new StringBuilder();
-
-      sb.append("Status '" + artifactStatus + "' is not allowed for code check-in\n\n");
-      sb.append("Current allowed statuses are: " + Arrays.toString(statuses) + "\n\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
-
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
+    finally {
+      cancelFetching();
+      writeMetrics();
+      writeAudit();
     }
   }
 
-  private void checkFixedInRelease() {
-    if (!fixedInReleaseStatus.equalsIgnoreCase("active")) {
-      HookUtils.print(System.err, author, "Release version '" + fixedInRelease + "' is not in 'active' state, please contact CM for assistance");
-      System.exit(1);
-    }
-
-    if (packageDescription == null) {
-      HookUtils.print(System.err, author, SYS_ERROR_MESSAGE, new Exception("invalid package description: empty"));
-      System.exit(1);
-    }
-
-    Pattern pattern = Pattern.compile("\\[\\s*version\\s*:(.*?)\\]", Pattern.CASE_INSENSITIVE);
-    Matcher matcher = pattern.matcher(packageDescription);
-    if (!matcher.find()) {
-      HookUtils.print(System.err, author, SYS_ERROR_MESSAGE, new Exception("invalid package description: release version missing"));
-      System.exit(1);
+  private void writeMetrics() {
+    try {
+      metrics.write(props);
     }
-
-    String[] releases = matcher.group(1).trim().split(",");
-    if (!Arrays.asList(releases).contains(fixedInRelease)) {
-      StringBuilder sb = new StringBuilder();
-
-      sb.append("Release version '" + fixedInRelease + "' is not allowed for code check-in\n\n");
-      sb.append("Current allowed versions are: " + Arrays.toString(releases) + "\n\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
-
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
+    catch (Exception ex) {
+      // metrics must never decide the fate of a commit
+      err.println("failed to write metrics: " + ex);
     }
   }
 
-  private void checkRepository() {
-    if (packageDescription == null) {
-      HookUtils.print(System.err, author, SYS_ERROR_MESSAGE, new Exception("invalid package description: empty"));
-      System.exit(1);
-    }
-
-    Pattern pattern = Pattern.compile("\\[\\s*repository\\s*:(.*?)\\]", Pattern.CASE_INSENSITIVE);
-    Matcher matcher = pattern.matcher(packageDescription);
-    if (!matcher.find()) {
-      return;
+  /**
+   * Queues the decision for the audit log, never blocking on its file.
+   */
+  private void writeAudit() {
+    try {
+      AuditLog audit = AuditLog.getInstance(props);
+      if (audit != null) {
+        audit.append(AuditRecord.of(metrics, author, detail, rejection, audit.getMaxPaths()));
+      }
     }
-
-    String repo1 = HookUtils.getBasename(repoPath).trim();
-    String repo2 = matcher.group(1).trim();
-
-    if (!repo1.equals(repo2)) {
-      StringBuilder sb = new StringBuilder();
-
-      sb.append("Repository '" + repo1 + "' is not allowed for code check-in\n\n");
-      sb.append("Current allowed repository is: '" + repo2 + "'\n\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
-
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
+    catch (Exception ex) {
+      // the audit log must never decide the fate of a commit either
+      err.println("failed to audit: " + ex);
     }
   }
 
-  private void fetchChanged() throws Exception {
-    String[] output = new String[1];
-
-    int exitValue = CommandRunner.run(String.format("svnlook changed %s --transaction %s", repoPath, txnName), output);
-    if (exitValue != 0) {
-      throw new Exception(output[0]);
-    }
-
-    changed = output[0].trim().split("\\n");
+  public HookMetrics getMetrics() {
+    return metrics;
   }
 
-  private int fetchFileSize(String filePath) throws Exception {
-    String[] output = new String[1];
-
-    int exitValue = CommandRunner.run(String.format("svnlook --transaction %s filesize %s \"%s\"", txnName, repoPath, filePath), output);
-    if (exitValue != 0) {
-      throw new Exception(output[0]);
-    }
-
-    return Integer.valueOf(output[0].trim());
+  public String getAuthor() {
+    return author;
   }
 
-  private void checkChanged() throws Exception {
-    if (packageDescription == null) {
-      HookUtils.print(System.err, author, SYS_ERROR_MESSAGE, new Exception("invalid package description: empty"));
-      System.exit(1);
-    }
-
-    Pattern pattern = Pattern.compile("\\[\\s*branch\\s*:(.*?)\\]", Pattern.CASE_INSENSITIVE);
-    Matcher matcher = pattern.matcher(packageDescription);
-    if (!matcher.find()) {
-      HookUtils.print(System.err, author, SYS_ERROR_MESSAGE, new Exception("invalid package description: branch missing"));
-      System.exit(1);
-    }
-    String[] branches = matcher.group(1).trim().split(",");
-
-    List<String> namingViolatedItems = new ArrayList<>();
-    List<String> slimitViolatedItems = new ArrayList<>();
-    List<String> branchViolatedItems = new ArrayList<>();
-    List<String> dbdataViolatedItems = new ArrayList<>();
-    List<String> suffixViolatedItems = new ArrayList<>();
-
-    for (String chgdItem: changed) {
-      String type = chgdItem.trim().split("\\s+", 2)[0];
-      String path = chgdItem.trim().split("\\s+", 2)[1];
-
-      // naming violation check
-      if (namingCheck && type.equalsIgnoreCase("A") && path.contains(" ")) {
-        namingViolatedItems.add(path);
-      }
-
-      // size limit violation check
-      if (limit != null && type.equalsIgnoreCase("A") && !path.endsWith("/")) {
-        if (fetchFileSize(path) > HookUtils.getFileSizeLimit(limit)) {
-          slimitViolatedItems.add(path);
-        }
-      }
-
-      // branch violation check
-      boolean branchViolated = true;
-      for (String branch: branches) {
-        if (path.startsWith(branch)) {
-          branchViolated = false;
-          break;
-        }
-      }
-
-      if (branchViolated) {
-        branchViolatedItems.add(path);
-      }
-
-      // suffix violation check
-      boolean suffixViolated = false;
-      for (String suffix: suffixes) {
-        if (path.endsWith("." + suffix)) {
-          suffixViolated = true;
-          break;
-        }
-      }
-
-      if (suffixViolated) {
-        suffixViolatedItems.add(path);
-      }
-
-      // dbdata violation check
-      if (dbdataCheck && (path.contains("/dbscript/") || path.contains("/demodata/"))) {
-        if (path.endsWith("/")) {
-          continue;
-        }
-
-        if (!path.contains("/src/main/dbscript/") && (path.matches(".*/dbscript/(?:initdb|initdata)/.*"))) {
-          continue;
-        }
-
-        if (!path.contains("/" + fixedInRelease + "/")) {
-          dbdataViolatedItems.add(path);
-        }
-      }
-    }
+  /**
+   * @return the rejection of the last {@link #execute()}, or null
+   */
+  public RejectionException getRejection() {
+    return rejection;
+  }
 
-    if (!namingViolatedItems.isEmpty()) {
-      StringBuilder sb = new StringBuilder();
+  /**
+   * @return what the audit log records besides the outcome: the first line
+   * of a rejection, the error or why checks were skipped; or null
+   */
+  public String getDetail() {
+    return detail;
+  }
 
-      sb.append("Below changes contain whitespaces in the naming, please check\n\n");
-      for (String namingViolatedItem: namingViolatedItems) {
-        sb.append(namingViolatedItem + "\n");
-      }
-      sb.append("\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
+  private static String getFirstLine(String message) {
+    int end = message.indexOf('\n');
+    return (end < 0) ? message : message.substring(0, end);
+  }
 
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
-    }
+  private boolean isSuperUser() {
+    return options.isSuperUser(author);
+  }
 
-    if (!slimitViolatedItems.isEmpty()) {
-      StringBuilder sb = new StringBuilder();
+  private void startFetching() {
+    if (!options.isRevision() && Boolean.parseBoolean(HookUtils.getProperty(props, "fsfs.direct.read", "false"))) {
+      long start = metrics.start();
+      transaction = FsfsTransaction.open(repoPath, txnName);
+      metrics.stop("fsfs.read", start);
 
-      sb.append("Below changes exceeded maximum allowable size limit, please check\n\n");
-      sb.append("Current allowed file size limit is: [" + limit + "]\n\n");
-      for (String slimitViolatedItem: slimitViolatedItems) {
-        sb.append(slimitViolatedItem + "\n");
+      if (transaction != null) {
+        changed = new ChangeListSource(transaction.getChanges());
+        return;
       }
-      sb.append("\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
-
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
     }
 
-    if (!branchViolatedItems.isEmpty()) {
-      StringBuilder sb = new StringBuilder();
-
-      sb.append("Below changes are committing to the wrong branch, please check\n\n");
-      for (String branchViolatedItem: branchViolatedItems) {
-        sb.append(branchViolatedItem + "\n");
-      }
-      sb.append("\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
+    // these svnlook queries are independent of each other, so let them overlap
+    authorTask = CommandRunner.submit(new String[] {svnlook, "author", repoPath, target[0], target[1]}, metrics);
+    messageTask = CommandRunner.submit(new String[] {svnlook, "log", repoPath, target[0], target[1]}, metrics);
+  }
 
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
+  /**
+   * Starts streaming the change list once author and message are known. The
+   * stream holds a process permit while it waits for the checks to catch
+   * up, so it must not be started while this commit still needs permits of
+   * its own, or a burst of commits could hold every permit while their own
+   * queries time out.
+   */
+  private void startListing() {
+    if (changed == null) {
+      changed = new ChangeStream(new String[] {svnlook, "changed", repoPath, target[0], target[1]}, HookUtils.getIntProperty(props, "svnlook.changed.buffer", 1024), metrics);
     }
+  }
 
-    if (!suffixViolatedItems.isEmpty()) {
-      StringBuilder sb = new StringBuilder();
-
-      sb.append("Below changes are not allowed for check-in, please check\n\n");
-      for (String suffixViolatedItem: suffixViolatedItems) {
-        sb.append(suffixViolatedItem + "\n");
+  private void cancelFetching() {
+    for (Future<String> task: Arrays.asList(authorTask, messageTask)) {
+      if (task != null) {
+        task.cancel(true);
       }
-      sb.append("\n");
-      sb.append("Current forbidden file types are: " + Arrays.toString(suffixes) + "\n\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
-
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
     }
 
-    if (!dbdataViolatedItems.isEmpty()) {
-      StringBuilder sb = new StringBuilder();
-
-      sb.append("Below changes are committing to the wrong db folder, please check\n\n");
-      for (String dbdataViolatedItem: dbdataViolatedItems) {
-        sb.append(dbdataViolatedItem + "\n");
-      }
-      sb.append("\n");
-      sb.append("Please do the needful and try again, or contacting CM for assistance");
-
-      HookUtils.print(System.err, author, sb.toString());
-      System.exit(1);
+    if (changed != null) {
+      changed.close();
     }
   }
 
-  private void checkLogMessage() {
-    if (!logmsgCheck) {
-      return;
-    }
+  private void fetchAuthor() throws Exception {
+    long start = metrics.start();
+    author = (transaction != null) ? getRevisionProperty("svn:author") : CommandRunner.await(authorTask).trim();
+    metrics.stop("fetch.author", start);
+    metrics.setAuthor(author);
+  }
 
-    Pattern pattern = Pattern.compile("^\\s*what\\s*:\\s*\\S+.*$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-    Matcher matcher = pattern.matcher(message);
-    if (!matcher.find()) {
-      HookUtils.print(System.err, author, "Please provide 'What' information in the commit message");
-      System.exit(1);
-    }
+  private void fetchMessage() throws Exception {
+    long start = metrics.start();
+    message = (transaction != null) ? getRevisionProperty("svn:log") : CommandRunner.await(messageTask).trim();
+    metrics.stop("fetch.message", start);
+  }
 
-    pattern = Pattern.compile("^\\s*reviewed\\s+by\\s*:\\s*\\S+.*$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-    matcher = pattern.matcher(message);
-    if (!matcher.find()) {
-      HookUtils.print(System.err, author, "Please provide 'Reviewed By' information in the commit message");
-      System.exit(1);
-    }
+  private String getRevisionProperty(String name) {
+    String value = transaction.getProperty(name);
+    return (value == null) ? "" : value.trim();
   }
 }
@@ -0,0 +1,41 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signals that a commit violates one of the hook policies. The message is
+ * addressed to the committer and printed as-is, without a stack trace.
+ * The violated rule and paths, when known, are kept for the audit log.
+ */
+public class RejectionException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  private final String rule;
+  private final List<String> paths;
+
+  public RejectionException(String message) {
+    this(message, null, Collections.<String>emptyList());
+  }
+
+  public RejectionException(String message, String rule, List<String> paths) {
+    super(message);
+    this.rule = rule;
+    this.paths = paths;
+  }
+
+  /**
+   * @return the simple class name of the violated rule (comma separated
+   * with --report-all), or null if the commit was not rejected by a rule
+   */
+  public String getRule() {
+    return rule;
+  }
+
+  /**
+   * @return the violating paths, empty for commit rules
+   */
+  public List<String> getPaths() {
+    return paths;
+  }
+}
@@ -0,0 +1,390 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the hook over committed revisions, to find out which commits a policy
+ * change would have rejected before turning it on:
+ *
+ * <pre>
+ * java -cp svn-precommit-hook.jar io.hsiao.devops.svnhooks.ReplayRunner --workers=16 /svn/repo1 /svn/repo2@40000:HEAD -- --forbidden-suffixes=jar,zip --file-size-limit=10M
+ * </pre>
+ *
+ * Each repository is replayed with its configured arguments (see
+ * 'repositories.file'), followed by the arguments after "--", and always
+ * with --report-all, so that every rule a revision violates is counted.
+ * --rules=SuffixRule,FileSizeRule limits the replay to some rules; note that
+ * artifact rules judge the artifacts as they are today, not as they were at
+ * commit time. Revisions of all repositories share one pool of workers, and
+ * each artifact is looked up at most once per run (as far as the cache
+ * holds). --output=file keeps one {@link AuditRecord} line per revision.
+ */
+public class ReplayRunner {
+  private static final int MAX_EXAMPLES = 5;
+
+  private static final PrintStream NULL_STREAM = new PrintStream(new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  });
+
+  private final HookConfig config;
+  private final Properties props;
+  private final int workers;
+  private final RulePlan plan;
+  private final String output;
+  private final List<String> repositories = new ArrayList<>();
+  private final List<String> arguments = new ArrayList<>();
+
+  // the summary, guarded by this
+  private final Map<String, Integer> outcomes = new LinkedHashMap<>();
+  private final Map<String, Integer> rules = new LinkedHashMap<>();
+  private final Map<String, List<String>> examples = new LinkedHashMap<>();
+  private final Map<String, int[]> repositoryCounts = new LinkedHashMap<>();
+  private final List<String> errors = new ArrayList<>();
+  private Writer writer;
+
+  private final AtomicInteger completed = new AtomicInteger();
+
+  public ReplayRunner(String[] args, HookConfig config) throws Exception {
+    this.config = config;
+
+    int count = 2 * Runtime.getRuntime().availableProcessors();
+    String ruleNames = null;
+    String file = null;
+
+    int idx = 0;
+    for (; idx < args.length && !args[idx].equals("--"); ++idx) {
+      String argument = args[idx];
+
+      if (argument.startsWith("--workers=")) {
+        count = Integer.parseInt(HookUtils.getArgumentValue(argument));
+      }
+      else if (argument.startsWith("--rules=")) {
+        ruleNames = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--output=")) {
+        file = HookUtils.getArgumentValue(argument);
+      }
+      else if (argument.startsWith("--")) {
+        throw new Exception("bad argument '" + argument + "', expected --workers, --rules or --output, hook arguments go after '--'");
+      }
+      else {
+        repositories.add(argument);
+      }
+    }
+
+    if (idx < args.length) {
+      arguments.addAll(Arrays.asList(args).subList(idx + 1, args.length));
+    }
+    arguments.add("--revision");
+    arguments.add("--report-all");
+
+    if (repositories.isEmpty()) {
+      throw new Exception("no repository given, expected <repository>[@<from>[:<to>]] ...");
+    }
+
+    workers = Math.max(1, count);
+    plan = (ruleNames == null) ? RulePlan.getDefault() : RulePlan.compile(selectRules(ruleNames));
+    output = file;
+    props = getReplayProperties(config.getProperties(), workers);
+  }
+
+  private static List<HookRule> selectRules(String names) throws Exception {
+    Set<String> selected = new HashSet<>(Arrays.asList(names.split(",")));
+    List<HookRule> rules = new ArrayList<>();
+    List<String> known = new ArrayList<>();
+
+    for (HookRule rule: RulePlan.getInstalledRules()) {
+      String name = rule.getClass().getSimpleName();
+      known.add(name);
+      if (selected.remove(name)) {
+        rules.add(rule);
+      }
+    }
+
+    if (!selected.isEmpty()) {
+      throw new Exception("unknown rules " + selected + ", expected any of " + known);
+    }
+
+    return rules;
+  }
+
+  /**
+   * @return the hook properties, without metrics, audit and saved reports,
+   * with artifacts cached for the whole run and enough processes for the
+   * workers, which wait for them as long as it takes
+   */
+  private static Properties getReplayProperties(Properties hookProps, int workers) {
+    Properties props = new Properties();
+    props.putAll(hookProps);
+
+    props.setProperty("metrics.file", "");
+    props.setProperty("audit.dir", "");
+    props.setProperty("report.dir", "");
+    props.setProperty("cache.file", "");
+    props.setProperty("cache.ttl", String.valueOf(Integer.MAX_VALUE));
+    props.setProperty("cache.negative.ttl", String.valueOf(Integer.MAX_VALUE));
+
+    int processes = Math.max(HookUtils.getIntProperty(props, "command.max.processes", 8), 2 * workers);
+    props.setProperty("command.max.processes", String.valueOf(processes));
+    props.setProperty("admission.process.permits", String.valueOf(processes));
+    props.setProperty("admission.process.repository.permits", String.valueOf(processes));
+    props.setProperty("admission.max.wait", String.valueOf(Integer.MAX_VALUE));
+
+    return props;
+  }
+
+  /**
+   * @return the number of revisions the hook would have rejected
+   */
+  public int run(PrintStream out) throws Exception {
+    CommandRunner.configure(props);
+
+    List<String[]> revisions = new ArrayList<>();
+    for (String repository: repositories) {
+      addRevisions(repository, revisions);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "replay-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    long start = System.nanoTime();
+    final int total = revisions.size();
+
+    if (output != null) {
+      writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(output)), StandardCharsets.UTF_8));
+    }
+
+    try {
+      for (final String[] revision: revisions) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            replay(revision[0], revision[1]);
+
+            int done = completed.incrementAndGet();
+            if (done % 1000 == 0) {
+              System.err.println("replayed " + ReportWriter.formatCount(done) + " of " + ReportWriter.formatCount(total) + " revisions");
+            }
+          }
+        });
+      }
+
+      executor.shutdown();
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        // keep waiting, progress is reported by the workers
+      }
+    }
+    finally {
+      executor.shutdownNow();
+
+      if (writer != null) {
+        writer.close();
+      }
+    }
+
+    printSummary(out, total, System.nanoTime() - start);
+
+    Integer rejected = outcomes.get("rejected");
+    return (rejected == null) ? 0 : rejected;
+  }
+
+  /**
+   * @param repository "path", "path@from" or "path@from:to", with "HEAD" for
+   * the youngest revision
+   */
+  private void addRevisions(String repository, List<String[]> revisions) throws Exception {
+    String path = repository;
+    String range = "";
+
+    int at = repository.lastIndexOf('@');
+    if (at > 0) {
+      path = repository.substring(0, at);
+      range = repository.substring(at + 1);
+    }
+
+    String svnlook = HookUtils.getProperty(props, "svnlook.path", "svnlook");
+    int youngest = Integer.parseInt(CommandRunner.await(CommandRunner.submit(new String[] {svnlook, "youngest", path})).trim());
+
+    String[] bounds = range.isEmpty() ? new String[] {"1"} : range.split(":", 2);
+    int from = parseRevision(bounds[0], youngest);
+    int to = (bounds.length > 1) ? parseRevision(bounds[1], youngest) : youngest;
+
+    if (from < 1 || to > youngest || from > to) {
+      throw new Exception("bad revision range '" + range + "' of '" + path + "', its revisions are 1:" + youngest);
+    }
+
+    for (int revision = from; revision <= to; ++revision) {
+      revisions.add(new String[] {path, String.valueOf(revision)});
+    }
+  }
+
+  private static int parseRevision(String value, int youngest) {
+    return value.equalsIgnoreCase("HEAD") ? youngest : Integer.parseInt(value.trim());
+  }
+
+  private void replay(String repoPath, String revision) {
+    List<String> args = new ArrayList<>(Arrays.asList(config.getArguments(new String[] {repoPath, revision})));
+    args.addAll(arguments);
+
+    PreCommitHook hook;
+    try {
+      hook = new PreCommitHook(args.toArray(new String[args.size()]), props, NULL_STREAM, plan);
+    }
+    catch (Exception ex) {
+      record(repoPath, revision, null, ex.toString());
+      return;
+    }
+
+    hook.execute();
+    record(repoPath, revision, hook, hook.getDetail());
+  }
+
+  private synchronized void record(String repoPath, String revision, PreCommitHook hook, String detail) {
+    String outcome = (hook == null) ? "error" : hook.getMetrics().getOutcome();
+    increment(outcomes, outcome);
+
+    int[] counts = repositoryCounts.get(repoPath);
+    if (counts == null) {
+      counts = new int[2];
+      repositoryCounts.put(repoPath, counts);
+    }
+    ++counts[0];
+
+    String name = HookUtils.getBasename(repoPath) + "@" + revision;
+
+    if ("rejected".equals(outcome)) {
+      ++counts[1];
+
+      RejectionException rejection = hook.getRejection();
+      String rule = (rejection.getRule() == null) ? "(other)" : rejection.getRule();
+
+      for (String item: rule.split(",")) {
+        increment(rules, item);
+
+        List<String> list = examples.get(item);
+        if (list == null) {
+          list = new ArrayList<>();
+          examples.put(item, list);
+        }
+        if (list.size() < MAX_EXAMPLES) {
+          list.add(name);
+        }
+      }
+    }
+    else if ("error".equals(outcome) && errors.size() < MAX_EXAMPLES) {
+      errors.add(name + ": " + detail);
+    }
+
+    if (writer != null && hook != null) {
+      try {
+        writer.write(AuditRecord.of(hook.getMetrics(), hook.getAuthor(), detail, hook.getRejection(), Integer.MAX_VALUE).toLine());
+      }
+      catch (Exception ex) {
+        System.err.println("failed to write " + name + " to '" + output + "': " + ex);
+      }
+    }
+  }
+
+  private static void increment(Map<String, Integer> counts, String key) {
+    Integer count = counts.get(key);
+    counts.put(key, (count == null) ? 1 : count + 1);
+  }
+
+  private synchronized void printSummary(PrintStream out, int total, long nanos) {
+    double seconds = nanos / 1e9;
+
+    out.println(String.format("replayed %s revisions of %d repositories in %.1fs (%.1f revisions/s) with %d workers", ReportWriter.formatCount(total), repositories.size(), seconds, total / Math.max(seconds, 0.001), workers));
+
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Integer> entry: outcomes.entrySet()) {
+      sb.append(sb.length() == 0 ? "" : ", ").append(entry.getKey()).append(' ').append(ReportWriter.formatCount(entry.getValue()));
+    }
+    out.println(sb);
+
+    if (!rules.isEmpty()) {
+      List<Map.Entry<String, Integer>> sorted = new ArrayList<>(rules.entrySet());
+      Collections.sort(sorted, new Comparator<Map.Entry<String, Integer>>() {
+        @Override
+        public int compare(Map.Entry<String, Integer> entry1, Map.Entry<String, Integer> entry2) {
+          return Integer.compare(entry2.getValue(), entry1.getValue());
+        }
+      });
+
+      out.println();
+      out.println(String.format("%-24s %10s  %s", "rule", "revisions", "e.g."));
+      for (Map.Entry<String, Integer> entry: sorted) {
+        out.println(String.format("%-24s %10s  %s", entry.getKey(), ReportWriter.formatCount(entry.getValue()), join(examples.get(entry.getKey()))));
+      }
+    }
+
+    if (repositoryCounts.size() > 1) {
+      out.println();
+      out.println(String.format("%-24s %10s %10s", "repository", "revisions", "rejected"));
+      for (Map.Entry<String, int[]> entry: repositoryCounts.entrySet()) {
+        out.println(String.format("%-24s %10s %10s", HookUtils.getBasename(entry.getKey()), ReportWriter.formatCount(entry.getValue()[0]), ReportWriter.formatCount(entry.getValue()[1])));
+      }
+    }
+
+    if (!errors.isEmpty()) {
+      out.println();
+      out.println("errors (first " + errors.size() + "):");
+      for (String error: errors) {
+        out.println("  " + error);
+      }
+    }
+  }
+
+  private static String join(List<String> items) {
+    StringBuilder sb = new StringBuilder();
+    for (String item: items) {
+      sb.append(sb.length() == 0 ? "" : ", ").append(item);
+    }
+    return sb.toString();
+  }
+
+  public static void main(String[] args) {
+    try {
+      new ReplayRunner(args, HookConfig.load()).run(System.out);
+    }
+    catch (Exception ex) {
+      HookUtils.print(System.err, null, "replay failed", ex);
+      System.exit(1);
+    }
+  }
+}
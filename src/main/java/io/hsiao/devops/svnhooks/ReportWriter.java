@@ -0,0 +1,141 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Renders rejection reports. Reports go to the stream in one write instead
+ * of line by line, and lists of violating paths are cut after
+ * 'report.max.paths' entries, so a commit with thousands of violations does
+ * not send megabytes of stderr back to the client. The full lists can be
+ * kept on the server in 'report.dir'.
+ */
+public class ReportWriter {
+  private static final char SYMBOL = '-';
+  private static final int DEFAULT_MAX_PATHS = 100;
+
+  /**
+   * @return 'report.max.paths', read per call so that every commit uses the
+   * settings of its own configuration snapshot
+   */
+  public static int getMaxPaths(Properties props) {
+    return Math.max(1, HookUtils.getIntProperty(props, "report.max.paths", DEFAULT_MAX_PATHS));
+  }
+
+  /**
+   * Writes the message framed by dashed lines as wide as its longest line,
+   * in the charset of the stream (the daemon decodes its streams as UTF-8).
+   * The stream itself is flushed but not closed.
+   */
+  public static void write(PrintStream ps, String author, String message) {
+    char[] separator = new char[getWidth(message)];
+    Arrays.fill(separator, SYMBOL);
+
+    String newline = System.lineSeparator();
+    StringBuilder sb = new StringBuilder(message.length() + 2 * separator.length + 64);
+
+    sb.append(separator).append(newline);
+    if (author != null) {
+      sb.append("Dear ").append(author).append(newline).append(newline);
+    }
+    sb.append(message).append(newline);
+    sb.append(separator).append(newline);
+
+    // one write instead of line by line
+    ps.print(sb);
+    ps.flush();
+  }
+
+  /**
+   * @return the length of the longest line, found in one pass
+   */
+  private static int getWidth(String message) {
+    int width = 0;
+    int start = 0;
+
+    while (start <= message.length()) {
+      int end = message.indexOf('\n', start);
+      if (end < 0) {
+        end = message.length();
+      }
+
+      width = Math.max(width, end - start);
+      start = end + 1;
+    }
+
+    return width;
+  }
+
+  /**
+   * Appends one path per line, at most 'report.max.paths' of them, followed
+   * by "...and 48,211 more" if the list was cut.
+   */
+  public static StringBuilder appendPaths(StringBuilder sb, List<String> paths, Properties props) {
+    return appendPaths(sb, paths, null, props);
+  }
+
+  /**
+   * @param reasons appended to their paths after ": ", may be null
+   */
+  public static StringBuilder appendPaths(StringBuilder sb, List<String> paths, Map<String, String> reasons, Properties props) {
+    int shown = Math.min(paths.size(), getMaxPaths(props));
+
+    for (int idx = 0; idx < shown; ++idx) {
+      String path = paths.get(idx);
+
+      sb.append(path);
+      if (reasons != null && reasons.containsKey(path)) {
+        sb.append(": ").append(reasons.get(path));
+      }
+      sb.append('\n');
+    }
+
+    if (shown < paths.size()) {
+      sb.append("...and ").append(formatCount(paths.size() - shown)).append(" more\n");
+    }
+
+    return sb;
+  }
+
+  public static String formatCount(int count) {
+    return String.format(Locale.US, "%,d", count);
+  }
+
+  /**
+   * Saves the complete list of violating paths to 'report.dir' when it is
+   * too long to be shown, as "&lt;repository&gt;-&lt;txn&gt;-&lt;rule&gt;.txt".
+   *
+   * @return the file, or null if the list was shown in full or no report
+   * directory is configured
+   */
+  public static Path saveFullList(HookContext context, String rule, List<String> paths) throws IOException {
+    String reportDir = HookUtils.getProperty(context.getProperties(), "report.dir", "");
+    if (paths.size() <= getMaxPaths(context.getProperties()) || reportDir.isEmpty()) {
+      return null;
+    }
+
+    Path dir = Paths.get(reportDir);
+    Files.createDirectories(dir);
+
+    Path file = dir.resolve(HookUtils.getBasename(context.getRepoPath()) + "-" + context.getTxnName() + "-" + rule + ".txt");
+
+    try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (String path: paths) {
+        out.write(path);
+        out.write('\n');
+      }
+    }
+
+    return file;
+  }
+}
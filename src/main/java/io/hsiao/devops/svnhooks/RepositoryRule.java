@@ -0,0 +1,32 @@
+package io.hsiao.devops.svnhooks;
+
+/**
+ * "[repository:name]" in the package description pins the repository, for
+ * each of the artifacts.
+ */
+public class RepositoryRule implements CommitRule {
+  @Override
+  public int getCost() {
+    return COST_ARTIFACT;
+  }
+
+  @Override
+  public void check(HookContext context) throws Exception {
+    String repo1 = HookUtils.getBasename(context.getRepoPath()).trim();
+
+    for (Artifact artifact: context.getArtifacts()) {
+      String repo2 = context.getPackage(artifact).getRepository();
+      if (repo2 == null || repo1.equals(repo2)) {
+        continue;
+      }
+
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Repository '" + repo1 + "' is not allowed for code check-in" + context.describe(artifact) + "\n\n");
+      sb.append("Current allowed repository is: '" + repo2 + "'\n\n");
+      sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+      throw new RejectionException(sb.toString());
+    }
+  }
+}
@@ -0,0 +1,427 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Immutable evaluation plan compiled from a set of rules. Commit rules run
+ * first, cheapest first; path rules then share one pass over the change
+ * list, which stops at the first violating path. Rules cheaper than
+ * {@link HookRule#COST_ARTIFACT} overlap the artifact lookup, which only
+ * starts early if an artifact rule (up to {@link HookRule#COST_IO}) is
+ * part of the plan. Checks that
+ * batch their work (see {@link PathCheck#finish()}) only run when the pass
+ * was clean, unless all violations are to be reported (--report-all).
+ * Rules that need the artifact are skipped when TeamForge is unavailable
+ * and the 'allow' policy applies (see {@link ArtifactLookup}).
+ */
+public class RulePlan {
+  private static volatile RulePlan defaultPlan;
+
+  private final List<CommitRule> commitRules;
+  private final List<PathRule> pathRules;
+  private final boolean prefetch;
+
+  private RulePlan(List<CommitRule> commitRules, List<PathRule> pathRules) {
+    this.commitRules = Collections.unmodifiableList(commitRules);
+    this.pathRules = Collections.unmodifiableList(pathRules);
+
+    boolean artifactRules = false;
+    for (HookRule rule: getRules()) {
+      artifactRules |= rule.getCost() >= HookRule.COST_ARTIFACT && rule.getCost() < HookRule.COST_IO;
+    }
+    this.prefetch = artifactRules;
+  }
+
+  private List<HookRule> getRules() {
+    List<HookRule> rules = new ArrayList<>();
+    rules.addAll(commitRules);
+    rules.addAll(pathRules);
+    return rules;
+  }
+
+  public static RulePlan compile(List<? extends HookRule> rules) {
+    List<HookRule> ordered = new ArrayList<>(rules);
+
+    // stable sort, rules of equal cost keep their declaration order
+    Collections.sort(ordered, new Comparator<HookRule>() {
+      @Override
+      public int compare(HookRule rule1, HookRule rule2) {
+        return Integer.compare(rule1.getCost(), rule2.getCost());
+      }
+    });
+
+    List<CommitRule> commitRules = new ArrayList<>();
+    List<PathRule> pathRules = new ArrayList<>();
+
+    for (HookRule rule: ordered) {
+      if (rule instanceof CommitRule) {
+        commitRules.add((CommitRule) rule);
+      }
+      if (rule instanceof PathRule) {
+        pathRules.add((PathRule) rule);
+      }
+    }
+
+    return new RulePlan(commitRules, pathRules);
+  }
+
+  public static List<HookRule> getBuiltinRules() {
+    return Arrays.<HookRule>asList(
+      new ArtifactIdRule(),
+      new LogMessageRule(),
+      new AccessRule(),
+      new ArtifactStatusRule(),
+      new FixedInReleaseRule(),
+      new RepositoryRule(),
+      new NamingRule(),
+      new SuffixRule(),
+      new BranchRule(),
+      new DbdataRule(),
+      new FileSizeRule(),
+      new ContentRule()
+    );
+  }
+
+  /**
+   * @return the builtin rules plus any rule registered through
+   * {@link ServiceLoader}
+   */
+  public static List<HookRule> getInstalledRules() {
+    List<HookRule> rules = new ArrayList<>(getBuiltinRules());
+    for (HookRule rule: ServiceLoader.load(HookRule.class)) {
+      rules.add(rule);
+    }
+    return rules;
+  }
+
+  /**
+   * @return the plan made of the installed rules, compiled once per process
+   */
+  public static RulePlan getDefault() {
+    if (defaultPlan == null) {
+      synchronized (RulePlan.class) {
+        if (defaultPlan == null) {
+          defaultPlan = compile(getInstalledRules());
+        }
+      }
+    }
+
+    return defaultPlan;
+  }
+
+  public List<CommitRule> getCommitRules() {
+    return commitRules;
+  }
+
+  public List<PathRule> getPathRules() {
+    return pathRules;
+  }
+
+  /**
+   * @throws RejectionException for the first violated rule, or for all of
+   * them with --report-all
+   */
+  public void execute(HookContext context, ChangeSource changes) throws Exception {
+    new Evaluation(context, changes).run();
+  }
+
+  /**
+   * One run of the plan over a commit. The artifact is looked up in the
+   * background while the local commit rules and the local path rules run;
+   * records read in the meantime are kept and handed to the artifact rules
+   * once it arrived, up to 'svnlook.changed.buffer' records past which the
+   * listing waits for the artifact. A local rejection cancels the lookup and
+   * the listing.
+   */
+  private class Evaluation {
+    private final HookContext context;
+    private final ChangeSource changes;
+    private final HookMetrics metrics;
+    private final boolean reportAll;
+
+    // rejection messages, rules and paths collected with --report-all, in rule order
+    private final Set<String> rejections = new LinkedHashSet<>();
+    private final Set<String> rejectedRules = new LinkedHashSet<>();
+    private final List<String> rejectedPaths = new ArrayList<>();
+
+    private final List<PathCheck> checks = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<List<String>> violations = new ArrayList<>();
+
+    // records read while the artifact was still on its way
+    private final List<ChangeRecord> pending = new ArrayList<>();
+    private final int maxPending;
+    private boolean artifactStarted;
+
+    private Evaluation(HookContext context, ChangeSource changes) {
+      this.context = context;
+      this.changes = changes;
+      this.metrics = context.getMetrics();
+      this.reportAll = context.getOptions().isReportAll();
+      this.maxPending = Math.max(1, HookUtils.getIntProperty(context.getProperties(), "svnlook.changed.buffer", 1024));
+    }
+
+    private void run() throws Exception {
+      try {
+        evaluate();
+      }
+      finally {
+        for (PathCheck check: checks) {
+          if (check instanceof Closeable) {
+            try {
+              ((Closeable) check).close();
+            }
+            catch (IOException ex) {
+              // only temporary files are left behind
+            }
+          }
+        }
+      }
+    }
+
+    private void evaluate() throws Exception {
+      boolean done = false;
+
+      if (prefetch) {
+        context.prefetchArtifact();
+      }
+      try {
+        for (CommitRule rule: commitRules) {
+          if (rule.getCost() < HookRule.COST_ARTIFACT) {
+            checkCommit(rule);
+          }
+        }
+
+        for (PathRule rule: pathRules) {
+          if (rule.getCost() < HookRule.COST_ARTIFACT) {
+            begin(rule);
+          }
+        }
+
+        long start = metrics.start();
+        try {
+          checkPaths();
+        }
+        finally {
+          metrics.stop("rule.paths", start);
+        }
+
+        done = true;
+      }
+      finally {
+        if (!done) {
+          // rejected (or failed) before reading everything
+          context.cancelArtifact();
+          changes.close();
+        }
+      }
+
+      for (int idx = 0; idx < checks.size(); ++idx) {
+        if (!violations.get(idx).isEmpty()) {
+          RejectionException ex = new RejectionException(getMessage(idx), names.get(idx), violations.get(idx));
+          if (!reportAll) {
+            throw ex;
+          }
+          reject(ex);
+        }
+      }
+
+      if (!rejections.isEmpty()) {
+        StringBuilder sb = new StringBuilder();
+        for (String message: rejections) {
+          if (sb.length() > 0) {
+            sb.append("\n\n");
+          }
+          sb.append(message);
+        }
+
+        throw new RejectionException(sb.toString(), join(rejectedRules), rejectedPaths);
+      }
+    }
+
+    private void reject(RejectionException ex) {
+      rejections.add(ex.getMessage());
+      rejectedRules.add(ex.getRule());
+      rejectedPaths.addAll(ex.getPaths());
+    }
+
+    private String join(Set<String> items) {
+      StringBuilder sb = new StringBuilder();
+      for (String item: items) {
+        if (sb.length() > 0) {
+          sb.append(',');
+        }
+        sb.append(item);
+      }
+      return sb.toString();
+    }
+
+    /**
+     * @return the rejection, attributed to the rule that raised it
+     */
+    private RejectionException attribute(RejectionException ex, HookRule rule) {
+      if (ex.getRule() != null) {
+        return ex;
+      }
+      return new RejectionException(ex.getMessage(), rule.getClass().getSimpleName(), ex.getPaths());
+    }
+
+    private String getMessage(int idx) {
+      List<String> paths = violations.get(idx);
+      String message = checks.get(idx).getMessage(paths);
+
+      try {
+        Path file = ReportWriter.saveFullList(context, names.get(idx), paths);
+        if (file != null) {
+          message += "\n\nThe full list of " + ReportWriter.formatCount(paths.size()) + " changes is kept on the server as '" + file + "'";
+        }
+      }
+      catch (IOException ex) {
+        // the shortened list still tells the user what to fix
+      }
+
+      return message;
+    }
+
+    private void checkCommit(CommitRule rule) throws Exception {
+      long start = metrics.start();
+      try {
+        rule.check(context);
+      }
+      catch (RejectionException ex) {
+        if (!reportAll) {
+          throw attribute(ex, rule);
+        }
+        reject(attribute(ex, rule));
+      }
+      catch (ArtifactUnavailableException ex) {
+        skip(rule);
+      }
+      finally {
+        metrics.stop("rule." + rule.getClass().getSimpleName(), start);
+      }
+    }
+
+    private void skip(HookRule rule) {
+      metrics.record("rule." + rule.getClass().getSimpleName() + ".skipped", 0);
+    }
+
+    private void begin(PathRule rule) throws Exception {
+      PathCheck check;
+      try {
+        check = rule.begin(context);
+      }
+      catch (RejectionException ex) {
+        if (!reportAll) {
+          throw attribute(ex, rule);
+        }
+        reject(attribute(ex, rule));
+        return;
+      }
+      catch (ArtifactUnavailableException ex) {
+        skip(rule);
+        return;
+      }
+
+      if (check != null) {
+        checks.add(check);
+        names.add(rule.getClass().getSimpleName());
+        violations.add(new ArrayList<String>());
+      }
+    }
+
+    /**
+     * Runs the rules that need the artifact, waiting for it if necessary,
+     * and catches their checks up on the pending records.
+     *
+     * @return true if a pending record violates one of them
+     */
+    private boolean startArtifactRules() throws Exception {
+      artifactStarted = true;
+
+      for (CommitRule rule: commitRules) {
+        if (rule.getCost() >= HookRule.COST_ARTIFACT) {
+          checkCommit(rule);
+        }
+      }
+
+      int first = checks.size();
+      for (PathRule rule: pathRules) {
+        if (rule.getCost() >= HookRule.COST_ARTIFACT) {
+          begin(rule);
+        }
+      }
+
+      boolean violated = false;
+      for (ChangeRecord record: pending) {
+        violated |= accept(record, first);
+      }
+      pending.clear();
+
+      return violated;
+    }
+
+    private boolean accept(ChangeRecord record, int first) throws Exception {
+      boolean violated = false;
+
+      for (int idx = first; idx < checks.size(); ++idx) {
+        if (checks.get(idx).accept(record)) {
+          violations.get(idx).add(record.getPath());
+          violated = true;
+        }
+      }
+
+      return violated;
+    }
+
+    private void checkPaths() throws Exception {
+      boolean violated = false;
+
+      ChangeRecord record;
+      while ((reportAll || !violated) && (record = changes.next()) != null) {
+        // past the cap, wait for the artifact rather than hold more records
+        if (!artifactStarted && (pending.size() >= maxPending || context.isArtifactReady())) {
+          violated |= startArtifactRules();
+        }
+
+        if (!artifactStarted) {
+          pending.add(record);
+        }
+
+        violated |= accept(record, 0);
+      }
+
+      if (violated && !reportAll) {
+        // reject on the first fatal violation rather than reading the rest
+        // of the listing or waiting for the artifact
+        changes.close();
+        context.cancelArtifact();
+        return;
+      }
+
+      if (!artifactStarted) {
+        violated |= startArtifactRules();
+      }
+
+      if (violated && !reportAll) {
+        return;
+      }
+
+      for (int idx = 0; idx < checks.size(); ++idx) {
+        long start = metrics.start();
+        violations.get(idx).addAll(checks.get(idx).finish());
+        metrics.stop("rule." + names.get(idx) + ".finish", start);
+      }
+    }
+  }
+}
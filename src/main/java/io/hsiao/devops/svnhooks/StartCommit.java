@@ -0,0 +1,64 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Companion start-commit hook: asks the {@link HookDaemon} to warm up for
+ * the user's commit (see {@link CommitWarmup}) while its data is uploaded,
+ * and exits right away. Subversion passes the repository path, the user,
+ * the client capabilities and, since 1.8, the transaction name; options
+ * after them are those of the pre-commit hook, of which only --superusers
+ * matters here.
+ *
+ * Never blocks a commit: super-users, an unreachable daemon and any error
+ * simply skip the warm-up, the pre-commit hook then looks everything up
+ * itself.
+ */
+public class StartCommit {
+  private final String repoPath;
+  private final String user;
+  private final HookOptions options;
+  private final Properties props;
+
+  public StartCommit(String[] args, Properties props) throws Exception {
+    if (args.length < 2) {
+      throw new Exception("bad arguments: both repository path and user are mandatory");
+    }
+
+    this.repoPath = args[0];
+    this.user = args[1];
+    this.options = new HookOptions(Arrays.asList(args).subList(2, args.length));
+    this.props = props;
+  }
+
+  /**
+   * @return true if the daemon took the request
+   */
+  public boolean execute() {
+    if (options.isSuperUser(user)) {
+      return false;
+    }
+
+    try {
+      return HookClient.forward(props, HookProtocol.COMMAND_WARM, new String[] {repoPath, user}, new String[1]) == 0;
+    }
+    catch (IOException ex) {
+      // no daemon, nothing to keep warm
+      return false;
+    }
+  }
+
+  public static void main(String[] args) {
+    try {
+      HookConfig config = HookConfig.load();
+      new StartCommit(config.getArguments(args), config.getProperties()).execute();
+    }
+    catch (Exception ex) {
+      HookUtils.print(System.err, null, "failed to warm up for the commit", ex);
+    }
+
+    System.exit(0);
+  }
+}
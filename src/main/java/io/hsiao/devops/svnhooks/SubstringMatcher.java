@@ -0,0 +1,128 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over up to 64 substrings. One scan of a path
+ * reports every pattern it contains as a bit mask (bit i for pattern i).
+ */
+public class SubstringMatcher {
+  public static final int MAX_PATTERNS = 64;
+
+  private static final int ASCII = 128;
+
+  private final int[] asciiColumns = new int[ASCII];
+  private final Map<Character, Integer> otherColumns = new HashMap<>();
+  private final int columns;
+
+  // dense transition table, one row of 'columns' entries per state
+  private final int[] transitions;
+  private final long[] outputs;
+
+  public SubstringMatcher(String... patterns) {
+    if (patterns.length > MAX_PATTERNS) {
+      throw new IllegalArgumentException("at most " + MAX_PATTERNS + " patterns are supported");
+    }
+
+    // column 0 stands for every character that occurs in no pattern
+    Arrays.fill(asciiColumns, 0);
+    int column = 1;
+    for (String pattern: patterns) {
+      for (char ch: pattern.toCharArray()) {
+        if (getColumn(ch) == 0) {
+          if (ch < ASCII) {
+            asciiColumns[ch] = column++;
+          }
+          else {
+            otherColumns.put(ch, column++);
+          }
+        }
+      }
+    }
+    columns = column;
+
+    // trie of the patterns
+    List<int[]> rows = new ArrayList<>();
+    List<Long> masks = new ArrayList<>();
+    rows.add(new int[columns]);
+    masks.add(0L);
+
+    for (int idx = 0; idx < patterns.length; ++idx) {
+      int state = 0;
+      for (char ch: patterns[idx].toCharArray()) {
+        int col = getColumn(ch);
+        if (rows.get(state)[col] == 0) {
+          rows.get(state)[col] = rows.size();
+          rows.add(new int[columns]);
+          masks.add(0L);
+        }
+        state = rows.get(state)[col];
+      }
+      masks.set(state, masks.get(state) | (1L << idx));
+    }
+
+    // breadth-first failure links, folded into the transition table
+    int[] failure = new int[rows.size()];
+    Deque<Integer> queue = new ArrayDeque<>();
+
+    for (int col = 0; col < columns; ++col) {
+      int next = rows.get(0)[col];
+      if (next != 0) {
+        queue.add(next);
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      masks.set(state, masks.get(state) | masks.get(failure[state]));
+
+      for (int col = 0; col < columns; ++col) {
+        int next = rows.get(state)[col];
+        if (next != 0) {
+          failure[next] = rows.get(failure[state])[col];
+          queue.add(next);
+        }
+        else {
+          rows.get(state)[col] = rows.get(failure[state])[col];
+        }
+      }
+    }
+
+    transitions = new int[rows.size() * columns];
+    outputs = new long[rows.size()];
+    for (int state = 0; state < rows.size(); ++state) {
+      System.arraycopy(rows.get(state), 0, transitions, state * columns, columns);
+      outputs[state] = masks.get(state);
+    }
+  }
+
+  private int getColumn(char ch) {
+    if (ch < ASCII) {
+      return asciiColumns[ch];
+    }
+    Integer column = otherColumns.get(ch);
+    return column == null ? 0 : column;
+  }
+
+  /**
+   * @return bit i is set if the text contains pattern i
+   */
+  public long scan(String text) {
+    long found = 0;
+    int state = 0;
+
+    int length = text.length();
+    for (int idx = 0; idx < length; ++idx) {
+      state = transitions[state * columns + getColumn(text.charAt(idx))];
+      found |= outputs[state];
+    }
+
+    return found;
+  }
+}
@@ -0,0 +1,55 @@
+package io.hsiao.devops.svnhooks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Paths ending with one of the --forbidden-suffixes are rejected.
+ */
+public class SuffixRule implements PathRule {
+  @Override
+  public int getCost() {
+    return COST_LOCAL + 1;
+  }
+
+  @Override
+  public PathCheck begin(final HookContext context) throws Exception {
+    String[] suffixes = context.getOptions().getSuffixes();
+    if (suffixes.length == 0) {
+      return null;
+    }
+
+    List<String> extensions = new ArrayList<>();
+    for (String suffix: suffixes) {
+      extensions.add("." + suffix);
+    }
+    final PathTrie forbidden = PathTrie.ofSuffixes(extensions);
+
+    return new PathCheck() {
+      @Override
+      public boolean accept(ChangeRecord record) {
+        return forbidden.matches(record.getPath());
+      }
+
+      @Override
+      public List<String> finish() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public String getMessage(List<String> paths) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Below changes are not allowed for check-in, please check\n\n");
+        ReportWriter.appendPaths(sb, paths, context.getProperties());
+        sb.append("\n");
+        sb.append("Current forbidden file types are: ").append(Arrays.toString(context.getOptions().getSuffixes())).append("\n\n");
+        sb.append("Please do the needful and try again, or contacting CM for assistance");
+
+        return sb.toString();
+      }
+    };
+  }
+}
@@ -0,0 +1,90 @@
+package io.hsiao.devops.svnhooks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the rules over a synthetic commit, without svnlook or a database, so
+ * that a class data sharing archive dumped at its exit (see the 'appcds'
+ * profile) holds the classes of a real hook run. Re-run it wherever the
+ * deployed jar and driver live if the archive was built elsewhere:
+ *
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=svn-precommit-hook.jsa -cp svn-precommit-hook.jar io.hsiao.devops.svnhooks.TrainingRun
+ * </pre>
+ *
+ * Given a file name, it also writes the training artifact to an artifact
+ * snapshot there, so that hook runs need no database (see
+ * benchmarks/startup.sh).
+ */
+public class TrainingRun {
+  private static final String ARTIFACT_ID = "artf1";
+  private static final String PACKAGE_DESCRIPTION = "[branch:trunk/,branches/r1/][version:1.0][access:trainer][repository:repo]";
+
+  public static void main(String[] args) {
+    try {
+      if (args.length > 0) {
+        ArtifactSnapshot.Builder builder = new ArtifactSnapshot.Builder();
+        builder.addRelease("rel1", "1.0", "active", PACKAGE_DESCRIPTION);
+        builder.addArtifact(ARTIFACT_ID, "Opened", "rel1");
+        builder.write(Paths.get(args[0]), System.currentTimeMillis());
+      }
+
+      Properties props = HookConfig.load().getProperties();
+
+      CommandRunner.configure(props);
+
+      // the lookup is answered by the cache, only the driver classes are loaded
+      DriverManager.getDrivers();
+      ArtifactCache.getInstance(props).put(new Artifact(ARTIFACT_ID, "Opened", "1.0", "active", PACKAGE_DESCRIPTION));
+
+      HookOptions options = new HookOptions(Arrays.asList("--superusers=admin", "--forbidden-suffixes=jar,zip", "--check-log-message"));
+      String message = "[" + ARTIFACT_ID + "] training run\n\nWhat: nothing\nReviewed By: nobody";
+
+      List<ChangeRecord> accepted = new ArrayList<>();
+      for (int idx = 0; idx < 100; ++idx) {
+        accepted.add(ChangeRecord.parse("U   trunk/src/main/java/File" + idx + ".java"));
+      }
+      accepted.add(ChangeRecord.parse("A   branches/r1/dbscript/1.0/update.sql"));
+      accepted.add(ChangeRecord.parse("A   trunk/src/main/resources/"));
+
+      List<ChangeRecord> rejected = new ArrayList<>(accepted);
+      rejected.add(ChangeRecord.parse("A   trunk/lib/some library.jar"));
+
+      for (List<ChangeRecord> records: Arrays.asList(accepted, rejected)) {
+        HookMetrics metrics = new HookMetrics();
+        HookContext context = new HookContext(props, "svnlook", "/svn/repo", "1-1", "trainer", message, options, metrics, null);
+
+        try {
+          RulePlan.getDefault().execute(context, new ChangeListSource(records));
+          metrics.setOutcome("accepted");
+        }
+        catch (RejectionException ex) {
+          metrics.setOutcome("rejected");
+          ReportWriter.write(new PrintStream(new ByteArrayOutputStream(), false, "UTF-8"), context.getAuthor(), ex.getMessage());
+        }
+
+        metrics.toJson();
+      }
+
+      try {
+        CommandRunner.run(new String[] {HookUtils.getProperty(props, "svnlook.path", "svnlook"), "--version"}, new String[1]);
+      }
+      catch (Exception ex) {
+        // svnlook is not needed here, only the classes that spawn it
+      }
+
+      System.out.println("training run completed");
+    }
+    catch (Exception ex) {
+      HookUtils.print(System.err, null, "training run failed", ex);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package io.hsiao.devops.svnhooks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes snapshots with {@link ArtifactSnapshot.Builder} and reads them back.
+ */
+public class ArtifactSnapshotTest {
+  private static final long CREATED_AT = 1767225600000L;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTrip() throws Exception {
+    ArtifactSnapshot.Builder builder = new ArtifactSnapshot.Builder();
+    builder.addRelease("rel1", "1.0", "Active", "[branch:trunk/][version:1.0][repository:repo]");
+    builder.addRelease("rel2", "2.0 – größer", "Closed", null);
+
+    assertTrue(builder.addArtifact("artf100", "Open", "rel1"));
+    assertTrue(builder.addArtifact("artf7", "Fixed", "rel2"));
+    assertTrue(builder.addArtifact("artf999999999999999999", "Open", "rel1"));
+
+    ArtifactSnapshot snapshot = write(builder, "snapshot.bin");
+    assertNotNull(snapshot);
+
+    assertEquals(CREATED_AT, snapshot.getCreatedAt());
+    assertEquals(3, snapshot.getArtifactCount());
+
+    assertArtifact(snapshot.lookup("artf100"), "artf100", "Open", "1.0", "Active", "[branch:trunk/][version:1.0][repository:repo]");
+    assertArtifact(snapshot.lookup("artf7"), "artf7", "Fixed", "2.0 – größer", "Closed", null);
+    assertArtifact(snapshot.lookup("artf999999999999999999"), "artf999999999999999999", "Open", "1.0", "Active", "[branch:trunk/][version:1.0][repository:repo]");
+  }
+
+  @Test
+  public void unknownArtifacts() throws Exception {
+    ArtifactSnapshot.Builder builder = new ArtifactSnapshot.Builder();
+    builder.addRelease("rel1", "1.0", "Active", "pkg");
+    builder.addArtifact("artf100", "Open", "rel1");
+    builder.addArtifact("artf300", "Open", "rel1");
+
+    ArtifactSnapshot snapshot = write(builder, "snapshot.bin");
+
+    for (String artifactId: Arrays.asList("artf1", "artf200", "artf301", "artf0100", "ARTF100", "artf", "artf10x", "task100", "artf1000000000000000000")) {
+      assertNull(artifactId, snapshot.lookup(artifactId));
+    }
+  }
+
+  @Test
+  public void skipsArtifactsThatCannotBeStored() throws Exception {
+    ArtifactSnapshot.Builder builder = new ArtifactSnapshot.Builder();
+    builder.addRelease("rel1", "1.0", "Active", "pkg");
+
+    assertFalse(builder.addArtifact("artf100", "Open", "unknown"));
+    assertFalse(builder.addArtifact("artf0100", "Open", "rel1"));
+    assertFalse(builder.addArtifact("bug100", "Open", "rel1"));
+
+    ArtifactSnapshot snapshot = write(builder, "snapshot.bin");
+    assertEquals(0, snapshot.getArtifactCount());
+    assertNull(snapshot.lookup("artf100"));
+  }
+
+  @Test
+  public void emptySnapshot() throws Exception {
+    ArtifactSnapshot snapshot = write(new ArtifactSnapshot.Builder(), "snapshot.bin");
+
+    assertNotNull(snapshot);
+    assertEquals(0, snapshot.getArtifactCount());
+    assertNull(snapshot.lookup("artf100"));
+  }
+
+  @Test
+  public void remapsReplacedFile() throws Exception {
+    ArtifactSnapshot.Builder builder = new ArtifactSnapshot.Builder();
+    builder.addRelease("rel1", "1.0", "Active", "pkg");
+    builder.addArtifact("artf100", "Open", "rel1");
+
+    Path file = folder.getRoot().toPath().resolve("snapshot.bin");
+    ArtifactSnapshot first = write(builder, "snapshot.bin");
+    assertSame(first, ArtifactSnapshot.getInstance(file));
+
+    builder.addArtifact("artf200", "Fixed", "rel1");
+    builder.write(file, CREATED_AT + 1);
+    // the modification time may have a coarse resolution
+    Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+
+    ArtifactSnapshot second = ArtifactSnapshot.getInstance(file);
+    assertEquals(CREATED_AT + 1, second.getCreatedAt());
+    assertEquals("Fixed", second.lookup("artf200").getStatus());
+  }
+
+  @Test
+  public void rejectsDamagedFiles() throws Exception {
+    ArtifactSnapshot.Builder builder = new ArtifactSnapshot.Builder();
+    builder.addRelease("rel1", "1.0", "Active", "pkg");
+    builder.addArtifact("artf100", "Open", "rel1");
+
+    Path file = folder.getRoot().toPath().resolve("truncated.bin");
+    builder.write(file, CREATED_AT);
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+    assertNull(ArtifactSnapshot.getInstance(file));
+
+    Path other = folder.newFile("other.bin").toPath();
+    Files.write(other, "not a snapshot at all, but long enough".getBytes("UTF-8"));
+    assertNull(ArtifactSnapshot.getInstance(other));
+
+    assertNull(ArtifactSnapshot.getInstance(folder.getRoot().toPath().resolve("missing.bin")));
+  }
+
+  private ArtifactSnapshot write(ArtifactSnapshot.Builder builder, String name) throws Exception {
+    Path file = folder.getRoot().toPath().resolve(name);
+    builder.write(file, CREATED_AT);
+    return ArtifactSnapshot.getInstance(file);
+  }
+
+  private static void assertArtifact(Artifact artifact, String id, String status, String release, String releaseStatus, String packageDescription) {
+    assertNotNull(id, artifact);
+    assertTrue(artifact.isFound());
+    assertEquals(id, artifact.getId());
+    assertEquals(status, artifact.getStatus());
+    assertEquals(release, artifact.getFixedInRelease());
+    assertEquals(releaseStatus, artifact.getFixedInReleaseStatus());
+    assertEquals(packageDescription, artifact.getPackageDescription());
+  }
+}
@@ -0,0 +1,430 @@
+package io.hsiao.devops.svnhooks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks {@link FsfsTransaction} against svnlook on transactions of a local
+ * repository, held open by a pre-commit hook while they are compared (these
+ * tests are skipped without svnadmin, svnlook and svnmucc on the PATH), and
+ * on hand-built transactions for the formats it must refuse.
+ */
+public class FsfsTransactionTest {
+  private static final String TXN = "1-1";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Process pending;
+  private File release;
+
+  @After
+  public void releaseTransaction() throws Exception {
+    if (pending != null) {
+      Files.createFile(release.toPath());
+      pending.waitFor();
+    }
+  }
+
+  @Test
+  public void matchesSvnlookForAddedFiles() throws Exception {
+    File repo = createRepository();
+
+    String txnName = hold(repo, "-u", "alice", "-m", "[artf100] add files\n\nsecond line",
+        "mkdir", url(repo, "trunk/src"),
+        "put", file("a.txt", "hello"), url(repo, "trunk/src/a.txt"),
+        "put", file("empty.txt", ""), url(repo, "trunk/src/empty.txt"),
+        "put", file("space.txt", "with a space"), url(repo, "trunk/src/with space.txt"));
+
+    assertMatchesSvnlook(repo, txnName);
+  }
+
+  @Test
+  public void matchesSvnlookForModifiedDeletedAndCopiedFiles() throws Exception {
+    File repo = createRepository(
+        "put", file("a.txt", "a"), "trunk/a.txt",
+        "put", file("b.txt", "b"), "trunk/b.txt",
+        "put", file("c.txt", "c"), "trunk/c.txt",
+        "mkdir", "trunk/dir",
+        "put", file("d.txt", "d"), "trunk/dir/d.txt");
+
+    String txnName = hold(repo, "-u", "bob", "-m", "[artf200] change files",
+        "put", file("a2.txt", "a, modified"), url(repo, "trunk/a.txt"),
+        "propset", "svn:eol-style", "native", url(repo, "trunk/b.txt"),
+        "put", file("c2.txt", "c, modified"), url(repo, "trunk/c.txt"),
+        "propset", "svn:keywords", "Id", url(repo, "trunk/c.txt"),
+        "rm", url(repo, "trunk/dir"),
+        "cp", "HEAD", url(repo, "trunk/a.txt"), url(repo, "trunk/copy.txt"));
+
+    assertMatchesSvnlook(repo, txnName);
+  }
+
+  @Test
+  public void matchesSvnlookForReplacedNodes() throws Exception {
+    File repo = createRepository(
+        "put", file("a.txt", "a"), "trunk/a.txt",
+        "mkdir", "trunk/dir",
+        "put", file("d.txt", "d"), "trunk/dir/d.txt");
+
+    String txnName = hold(repo, "-u", "carol", "-m", "[artf300] replace nodes",
+        "rm", url(repo, "trunk/a.txt"),
+        "put", file("a2.txt", "a, replaced"), url(repo, "trunk/a.txt"),
+        "rm", url(repo, "trunk/dir"),
+        "mkdir", url(repo, "trunk/dir"),
+        "put", file("e.txt", "e"), url(repo, "trunk/dir/e.txt"));
+
+    assertMatchesSvnlook(repo, txnName);
+  }
+
+  @Test
+  public void readsHandBuiltTransaction() throws Exception {
+    File repo = createFsfs("8\nlayout sharded 1000\n");
+
+    writeTxn(repo, "props", hash("svn:author", "zoë", "svn:log", "[artf100] déjà vu\n", "svn:date", "2026-01-01T00:00:00.000000Z"));
+    writeTxn(repo, "changes",
+        "_0.0.t1-1 add-dir false false false /trunk/dir\n\n"
+        + "_1.0.t1-1 add-file true false false /trunk/dir/a.txt\n\n"
+        + "_1.0.t1-1 modify-file true true false /trunk/dir/a.txt\n\n"
+        + "_2.0.t1-1 add-file true false false /trunk/gone.txt\n\n"
+        + "_2.0.t1-1 delete-file false false false /trunk/gone.txt\n\n"
+        + "3.0.t1-1 modify-file false true false /trunk/props.txt\n\n"
+        + "4.0.t1-1 modify-file true false false /trunk/reset.txt\n\n"
+        + "4.0.t1-1 reset-file false false false /trunk/reset.txt\n\n"
+        + "5.0.t1-1 delete-dir false false false /trunk/old\n\n"
+        + "_3.0.t1-1 add-file true false false /trunk/copy.txt\n"
+        + "3 /trunk/props.txt\n");
+    writeTxn(repo, "node._1.0", "id: _1.0.t1-1\ntype: file\ntext: -1 0 5 12 0123456789abcdef0123456789abcdef\ncpath: /trunk/dir/a.txt\n\n");
+    writeTxn(repo, "node._3.0", "id: _3.0.t1-1\ntype: file\ntext: 3 0 7 0 0123456789abcdef0123456789abcdef\ncpath: /trunk/copy.txt\n\n");
+
+    FsfsTransaction txn = FsfsTransaction.open(repo.getPath(), TXN);
+    assertNotNull(txn);
+
+    assertEquals("zoë", txn.getAuthor());
+    assertEquals("[artf100] déjà vu\n", txn.getMessage());
+    assertEquals("2026-01-01T00:00:00.000000Z", txn.getProperty("svn:date"));
+
+    assertEquals(Arrays.asList(
+        "A   trunk/copy.txt",
+        "A   trunk/dir/",
+        "A   trunk/dir/a.txt",
+        "D   trunk/old/",
+        "_U   trunk/props.txt"), toStrings(txn.getChanges()));
+
+    assertEquals(Long.valueOf(12), txn.getFileSize("trunk/dir/a.txt"));
+    // a legacy representation does not record the fulltext length
+    assertNull(txn.getFileSize("trunk/copy.txt"));
+    assertNull(txn.getFileSize("trunk/dir"));
+    assertNull(txn.getFileSize("trunk/unknown.txt"));
+  }
+
+  @Test
+  public void foldsChangesBelowDeletedDirectory() throws Exception {
+    File repo = createFsfs("8\n");
+
+    writeTxn(repo, "props", hash("svn:author", "alice"));
+    writeTxn(repo, "changes",
+        "1.0.t1-1 modify-file true false false /trunk/dir/a.txt\n\n"
+        + "2.0.t1-1 modify-file true false false /trunk/dir-sibling.txt\n\n"
+        + "3.0.t1-1 delete-dir false false false /trunk/dir\n\n");
+
+    assertEquals(Arrays.asList(
+        "D   trunk/dir/",
+        "U   trunk/dir-sibling.txt"), toStrings(FsfsTransaction.open(repo.getPath(), TXN).getChanges()));
+  }
+
+  @Test
+  public void refusesUnknownFormats() throws Exception {
+    for (String format: Arrays.asList("0\n", "9\n", "not a number\n")) {
+      File repo = createFsfs(format);
+      writeTxn(repo, "props", hash("svn:author", "alice"));
+      writeTxn(repo, "changes", "1.0.t1-1 modify-file true false false /trunk/a.txt\n\n");
+
+      assertNull("format " + format.trim(), FsfsTransaction.open(repo.getPath(), TXN));
+    }
+  }
+
+  @Test
+  public void refusesOtherBackends() throws Exception {
+    File repo = createFsfs("8\n");
+    write(new File(repo, "db/fs-type"), "bdb\n");
+    writeTxn(repo, "props", hash("svn:author", "alice"));
+    writeTxn(repo, "changes", "");
+
+    assertNull(FsfsTransaction.open(repo.getPath(), TXN));
+  }
+
+  @Test
+  public void refusesChangesWithoutNodeKind() throws Exception {
+    File repo = createFsfs("8\n");
+    writeTxn(repo, "props", hash("svn:author", "alice"));
+    // as written by formats before 4
+    writeTxn(repo, "changes", "1.0.t1-1 modify true false /trunk/a.txt\n\n");
+
+    assertNull(FsfsTransaction.open(repo.getPath(), TXN));
+  }
+
+  @Test
+  public void refusesDamagedTransactions() throws Exception {
+    File repo = createFsfs("8\n");
+
+    // no transaction at all
+    assertNull(FsfsTransaction.open(repo.getPath(), TXN));
+
+    // revision properties without END
+    writeTxn(repo, "props", "K 10\nsvn:author\nV 5\nalice\n");
+    writeTxn(repo, "changes", "");
+    assertNull(FsfsTransaction.open(repo.getPath(), TXN));
+
+    // an entry without path
+    writeTxn(repo, "props", hash("svn:author", "alice"));
+    writeTxn(repo, "changes", "1.0.t1-1 modify-file true false false\n\n");
+    assertNull(FsfsTransaction.open(repo.getPath(), TXN));
+
+    // an action this reader does not know
+    writeTxn(repo, "changes", "1.0.t1-1 add-file true false false /trunk/a.txt\n\n1.0.t1-1 move-file true false false /trunk/a.txt\n\n");
+    assertNull(FsfsTransaction.open(repo.getPath(), TXN));
+  }
+
+  @Test
+  public void hookFallsBackToSvnlookForUnknownFormat() throws Exception {
+    assumeTrue(new File("/bin/sh").canExecute());
+
+    File repo = createFsfs("9\n");
+    writeTxn(repo, "props", hash("svn:author", "mallory", "svn:log", ""));
+    writeTxn(repo, "changes", "");
+
+    assertEquals("superuser", runHook(repo, "alice"));
+  }
+
+  @Test
+  public void hookReadsKnownFormatDirectly() throws Exception {
+    assumeTrue(new File("/bin/sh").canExecute());
+
+    File repo = createFsfs("8\n");
+    writeTxn(repo, "props", hash("svn:author", "alice", "svn:log", ""));
+    writeTxn(repo, "changes", "");
+
+    // the svnlook stand-in names someone else, it must not be asked
+    assertEquals("superuser", runHook(repo, "mallory"));
+  }
+
+  /**
+   * Runs the hook with direct reads enabled, alice as the only super-user,
+   * and an svnlook stand-in reporting the given author.
+   *
+   * @return the outcome of the hook
+   */
+  private String runHook(File repo, String svnlookAuthor) throws Exception {
+    File svnlook = folder.newFile("svnlook");
+    write(svnlook, "#!/bin/sh\ncase \"$1\" in\n  author) echo " + svnlookAuthor + " ;;\n  log) echo ;;\nesac\n");
+    assertTrue(svnlook.setExecutable(true));
+
+    Properties props = new Properties();
+    props.setProperty("svnlook.path", svnlook.getPath());
+    props.setProperty("fsfs.direct.read", "true");
+
+    PreCommitHook hook = new PreCommitHook(new String[] {repo.getPath(), TXN, "--superusers=alice"}, props, new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"));
+    hook.execute();
+
+    return hook.getMetrics().getOutcome();
+  }
+
+  private void assertMatchesSvnlook(File repo, String txnName) throws Exception {
+    FsfsTransaction txn = FsfsTransaction.open(repo.getPath(), txnName);
+    assertNotNull("repository format not understood", txn);
+
+    assertEquals(svnlook("author", repo, txnName).trim(), txn.getAuthor());
+    // svnlook ends the message with a line break of its own
+    String log = svnlook("log", repo, txnName);
+    assertEquals(log.substring(0, log.length() - 1), txn.getMessage());
+
+    List<String> expected = new ArrayList<>();
+    for (String line: svnlook("changed", repo, txnName).split("\n")) {
+      ChangeRecord record = ChangeRecord.parse(line);
+      if (record != null) {
+        expected.add(record.toString());
+      }
+    }
+    List<String> actual = toStrings(txn.getChanges());
+
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+
+    for (ChangeRecord record: txn.getChanges()) {
+      if (!record.isDirectory() && !record.getType().equals("D")) {
+        Long size = txn.getFileSize(record.getPath());
+        if (size != null) {
+          assertEquals(record.getPath(), svnlook("filesize", repo, txnName, record.getPath()).trim(), size.toString());
+        }
+      }
+    }
+  }
+
+  private static List<String> toStrings(List<ChangeRecord> records) {
+    List<String> strings = new ArrayList<>();
+    for (ChangeRecord record: records) {
+      strings.add(record.toString());
+    }
+    return strings;
+  }
+
+  /**
+   * Creates a repository holding trunk and whatever the svnmucc actions
+   * (with paths relative to the repository root) add, and installs a
+   * pre-commit hook that keeps the next transaction open until released.
+   */
+  private File createRepository(String... actions) throws Exception {
+    assumeTrue(isInstalled("svnadmin") && isInstalled("svnlook") && isInstalled("svnmucc"));
+
+    File repo = new File(folder.getRoot(), "repo");
+    run("svnadmin", "create", repo.getPath());
+
+    List<String> command = new ArrayList<>(Arrays.asList("svnmucc", "-u", "setup", "-m", "setup", "mkdir", url(repo, "trunk")));
+    for (int idx = 0; idx < actions.length; ++idx) {
+      // local files given to put stay as they are
+      command.add(actions[idx].startsWith("trunk") ? url(repo, actions[idx]) : actions[idx]);
+    }
+    run(command.toArray(new String[command.size()]));
+
+    File txnFile = new File(folder.getRoot(), "txn");
+    release = new File(folder.getRoot(), "release");
+
+    File hook = new File(repo, "hooks/pre-commit");
+    write(hook, "#!/bin/sh\n"
+        + "PATH=/usr/local/bin:/usr/bin:/bin\n"
+        + "echo \"$2\" > '" + txnFile + ".tmp' && mv '" + txnFile + ".tmp' '" + txnFile + "'\n"
+        + "while [ ! -f '" + release + "' ]; do sleep 0.1; done\n"
+        + "exit 1\n");
+    assertTrue(hook.setExecutable(true));
+
+    return repo;
+  }
+
+  /**
+   * Starts the svnmucc commit and waits until the pre-commit hook holds its
+   * transaction.
+   *
+   * @return the transaction name
+   */
+  private String hold(File repo, String... arguments) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("svnmucc");
+    command.addAll(Arrays.asList(arguments));
+
+    pending = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File(folder.getRoot(), "svnmucc.log")).start();
+
+    File txnFile = new File(folder.getRoot(), "txn");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while (!txnFile.exists()) {
+      assertTrue("no transaction within 60s", System.nanoTime() < deadline);
+      Thread.sleep(50);
+    }
+
+    return new String(Files.readAllBytes(txnFile.toPath()), StandardCharsets.UTF_8).trim();
+  }
+
+  private static String svnlook(String subcommand, File repo, String txnName, String... arguments) throws Exception {
+    List<String> command = new ArrayList<>(Arrays.asList("svnlook", subcommand, repo.getPath()));
+    command.addAll(Arrays.asList(arguments));
+    command.add("-t");
+    command.add(txnName);
+
+    return run(command.toArray(new String[command.size()]));
+  }
+
+  private static String run(String... command) throws Exception {
+    Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    process.getOutputStream().close();
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (InputStream ins = process.getInputStream()) {
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = ins.read(buffer)) >= 0) {
+        output.write(buffer, 0, count);
+      }
+    }
+
+    assertEquals(Arrays.toString(command), 0, process.waitFor());
+    return output.toString("UTF-8");
+  }
+
+  private static boolean isInstalled(String command) {
+    try {
+      Process process = new ProcessBuilder(command, "--version").redirectErrorStream(true).start();
+      process.getOutputStream().close();
+      try (InputStream ins = process.getInputStream()) {
+        while (ins.read() >= 0) {
+          // drain
+        }
+      }
+      return process.waitFor() == 0;
+    }
+    catch (IOException | InterruptedException ex) {
+      return false;
+    }
+  }
+
+  private static String url(File repo, String path) {
+    return repo.toURI().toString().replaceFirst("^file:/+", "file:///").replaceAll("/$", "") + "/" + path;
+  }
+
+  private String file(String name, String content) throws IOException {
+    File file = new File(folder.getRoot(), "content-" + name);
+    write(file, content);
+    return file.getPath();
+  }
+
+  private File createFsfs(String format) throws IOException {
+    File repo = folder.newFolder();
+    write(new File(repo, "db/fs-type"), "fsfs\n");
+    write(new File(repo, "db/format"), format);
+    return repo;
+  }
+
+  private static void writeTxn(File repo, String name, String content) throws IOException {
+    write(new File(repo, "db/transactions/" + TXN + ".txn/" + name), content);
+  }
+
+  /**
+   * @return the hash dump of the key/value pairs, lengths in bytes
+   */
+  private static String hash(String... pairs) {
+    StringBuilder sb = new StringBuilder();
+    for (int idx = 0; idx < pairs.length; idx += 2) {
+      sb.append("K ").append(pairs[idx].getBytes(StandardCharsets.UTF_8).length).append('\n').append(pairs[idx]).append('\n');
+      sb.append("V ").append(pairs[idx + 1].getBytes(StandardCharsets.UTF_8).length).append('\n').append(pairs[idx + 1]).append('\n');
+    }
+    return sb.append("END\n").toString();
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Path path = file.toPath();
+    Files.createDirectories(path.getParent());
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+  }
+}